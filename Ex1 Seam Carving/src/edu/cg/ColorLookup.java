@@ -0,0 +1,136 @@
+package edu.cg;
+
+import java.util.function.IntUnaryOperator;
+
+// a point color operation compiled into tables of the 256 values of a channel. a lookup either
+// maps every channel through its own table, or first mixes the channels into one level
+//   level = (mixRed[red] + mixGreen[green] + mixBlue[blue]) / divisor
+// and then maps the level through the tables of the channels, as greyscale does. lookups compose
+// into one lookup with andThen, so a chain of operations costs a single pass over the pixels.
+// the colors are opaque and their channels are clamped to 0 - 255, as ImageProcessor makes them.
+public final class ColorLookup {
+	private static final int LEVELS = 256;
+
+	// null when the channels are not mixed
+	private final int[] mixRed, mixGreen, mixBlue;
+	private final int divisor;
+	private final int[] red, green, blue;
+
+	private ColorLookup(int[] mixRed, int[] mixGreen, int[] mixBlue, int divisor,
+			int[] red, int[] green, int[] blue) {
+		this.mixRed = mixRed;
+		this.mixGreen = mixGreen;
+		this.mixBlue = mixBlue;
+		this.divisor = divisor;
+		this.red = red;
+		this.green = green;
+		this.blue = blue;
+	}
+
+	//MARK: Operations
+	public static ColorLookup identity() {
+		return map(v -> v);
+	}
+
+	// the same map of every channel, clamped to 0 - 255
+	public static ColorLookup map(IntUnaryOperator channel) {
+		return map(channel, channel, channel);
+	}
+
+	public static ColorLookup map(IntUnaryOperator redMap, IntUnaryOperator greenMap,
+			IntUnaryOperator blueMap) {
+		return new ColorLookup(null, null, null, 1, table(redMap), table(greenMap), table(blueMap));
+	}
+
+	public static ColorLookup changeHue(RGBWeights rgbWeights) {
+		int max = rgbWeights.maxWeight;
+		return map(v -> rgbWeights.redWeight * v / max,
+				v -> rgbWeights.greenWeight * v / max,
+				v -> rgbWeights.blueWeight * v / max);
+	}
+
+	public static ColorLookup greyscale(RGBWeights rgbWeights) {
+		if (rgbWeights.weightsAmount == 0)
+			throw new IllegalArgumentException("The weights must not all be zero");
+
+		int[] levels = table(v -> v);
+		return new ColorLookup(linear(rgbWeights.redWeight), linear(rgbWeights.greenWeight),
+				linear(rgbWeights.blueWeight), rgbWeights.weightsAmount, levels, levels, levels);
+	}
+
+	// this lookup and then next, as one lookup
+	public ColorLookup andThen(ColorLookup next) {
+		if (next.mixRed == null) {
+			return new ColorLookup(mixRed, mixGreen, mixBlue, divisor,
+					compose(red, next.red), compose(green, next.green), compose(blue, next.blue));
+		}
+		if (mixRed == null) {
+			return new ColorLookup(compose(red, next.mixRed), compose(green, next.mixGreen),
+					compose(blue, next.mixBlue), next.divisor, next.red, next.green, next.blue);
+		}
+
+		// the level of next depends only on the level of this
+		int[] levels = new int[LEVELS];
+		for (int v = 0; v < LEVELS; v++) {
+			levels[v] = clamp((next.mixRed[red[v]] + next.mixGreen[green[v]] + next.mixBlue[blue[v]])
+					/ next.divisor);
+		}
+		return new ColorLookup(mixRed, mixGreen, mixBlue, divisor,
+				compose(levels, next.red), compose(levels, next.green), compose(levels, next.blue));
+	}
+
+	//MARK: Applying
+	public int apply(int argb) {
+		int r = (argb >> 16) & 0xFF;
+		int g = (argb >> 8) & 0xFF;
+		int b = argb & 0xFF;
+		if (mixRed != null) {
+			r = g = b = clamp((mixRed[r] + mixGreen[g] + mixBlue[b]) / divisor);
+		}
+		return 0xFF000000 | red[r] << 16 | green[g] << 8 | blue[b];
+	}
+
+	// applies the lookup to pixels [from, to) in place
+	public void apply(int[] pixels, int from, int to) {
+		int c, v;
+		if (mixRed == null) {
+			for (int i = from; i < to; i++) {
+				c = pixels[i];
+				pixels[i] = 0xFF000000 | red[(c >> 16) & 0xFF] << 16 | green[(c >> 8) & 0xFF] << 8 | blue[c & 0xFF];
+			}
+		} else {
+			for (int i = from; i < to; i++) {
+				c = pixels[i];
+				v = clamp((mixRed[(c >> 16) & 0xFF] + mixGreen[(c >> 8) & 0xFF] + mixBlue[c & 0xFF]) / divisor);
+				pixels[i] = 0xFF000000 | red[v] << 16 | green[v] << 8 | blue[v];
+			}
+		}
+	}
+
+	//MARK: Tables
+	private static int[] table(IntUnaryOperator map) {
+		int[] table = new int[LEVELS];
+		for (int v = 0; v < LEVELS; v++)
+			table[v] = clamp(map.applyAsInt(v));
+		return table;
+	}
+
+	private static int[] linear(int weight) {
+		int[] table = new int[LEVELS];
+		for (int v = 0; v < LEVELS; v++)
+			table[v] = weight * v;
+		return table;
+	}
+
+	// second[first[v]] for every v
+	private static int[] compose(int[] first, int[] second) {
+		int[] table = new int[LEVELS];
+		for (int v = 0; v < LEVELS; v++)
+			table[v] = second[first[v]];
+		return table;
+	}
+
+	private static int clamp(int v) {
+		return Math.max(0, Math.min(v, 255));
+	}
+}
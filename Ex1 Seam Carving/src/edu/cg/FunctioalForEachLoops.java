@@ -2,12 +2,37 @@ package edu.cg;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public abstract class FunctioalForEachLoops {
+	//MARK: Primitive actions, no boxing of the coordinates
+	@FunctionalInterface
+	public interface PixelAction {
+		void accept(int y, int x);
+	}
+	
+	// gets a span [fromX, toX) of row y, the parallel loops always pass whole rows
+	@FunctionalInterface
+	public interface RowAction {
+		void accept(int y, int fromX, int toX);
+	}
+	
+	// gets the rows [fromY, toY) of a band
+	@FunctionalInterface
+	public interface BandAction {
+		void accept(int fromY, int toY);
+	}
+	
+	// the default number of pixels below which rows are not split between threads
+	public static final int DEFAULT_GRAIN = 1 << 14;
+	
 	private int width;
 	private int height;
+	private int grain;
+	private ForkJoinPool pool;
 	
 	private class Params {
 		public final int width, height;
@@ -27,6 +52,8 @@ public abstract class FunctioalForEachLoops {
 	
 	public FunctioalForEachLoops() {
 		width = height = 0;
+		grain = DEFAULT_GRAIN;
+		pool = ForkJoinPool.commonPool();
 		stack = new ArrayDeque<>();
 	}
 	
@@ -59,12 +86,98 @@ public abstract class FunctioalForEachLoops {
 		stack.pop().restoreParams();
 	}
 	
+	// the parallel loops give every task a band of whole rows of at least grain pixels
+	public final void setForEachGrain(int grain) {
+		if (grain < 1)
+			throw new IllegalArgumentException("Grain must be positive");
+		this.grain = grain;
+	}
+	
+	public final void setForEachPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	public final int getForEachGrain() {
+		return grain;
+	}
+	
+	public final ForkJoinPool getForEachPool() {
+		return pool;
+	}
+	
 	public final void forEach(BiConsumer<Integer, Integer> action) {
-		forEachHeight(y ->
-			forEachWidth(x ->
-				action.accept(y, x)
-			)
-		);
+		forEachPixel(action::accept);
+	}
+	
+	public final void forEachPixel(PixelAction action) {
+		for(int y = 0; y < height; ++y)
+			for(int x = 0; x < width; ++x)
+				action.accept(y, x);
+	}
+	
+	public final void forEachRow(RowAction action) {
+		forEachRow(width, height, action);
+	}
+	
+	// the action must be safe to call for different pixels at the same time
+	public final void parallelForEach(PixelAction action) {
+		parallelForEachRow((y, fromX, toX) -> {
+			for(int x = fromX; x < toX; ++x)
+				action.accept(y, x);
+		});
+	}
+	
+	// the action must be safe to call for different rows at the same time
+	public final void parallelForEachRow(RowAction action) {
+		parallelForEachRow(width, height, grain, pool, action);
+	}
+	
+	//MARK: Loops with explicit bounds, they share no state and are safe to run concurrently
+	public static void forEachRow(int width, int height, RowAction action) {
+		for(int y = 0; y < height; ++y)
+			action.accept(y, 0, width);
+	}
+	
+	public static void parallelForEachRow(int width, int height, int grain, ForkJoinPool pool,
+			RowAction action) {
+		parallelForEachBand(width, height, grain, pool, (fromY, toY) -> {
+			for(int y = fromY; y < toY; ++y)
+				action.accept(y, 0, width);
+		});
+	}
+	
+	// the bands have at least grain pixels, a single band of all the rows runs on this thread
+	public static void parallelForEachBand(int width, int height, int grain, ForkJoinPool pool,
+			BandAction action) {
+		int bandHeight = Math.max(1, grain / Math.max(width, 1));
+		if (pool.getParallelism() > 1 && height > bandHeight)
+			pool.invoke(new BandsTask(action, bandHeight, 0, height));
+		else if (height > 0)
+			action.accept(0, height);
+	}
+	
+	@SuppressWarnings("serial")
+	private static class BandsTask extends RecursiveAction {
+		private final BandAction action;
+		private final int bandHeight, from, to;
+		
+		BandsTask(BandAction action, int bandHeight, int from, int to) {
+			this.action = action;
+			this.bandHeight = bandHeight;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if (to - from <= bandHeight) {
+				action.accept(from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new BandsTask(action, bandHeight, from, mid),
+						new BandsTask(action, bandHeight, mid, to));
+			}
+		}
 	}
 	
 	public final void forEachWidth(Consumer<Integer> action) {
@@ -0,0 +1,14 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+
+// an image operation with all of its settings fixed. the operations of ImageOperations keep no
+// state between calls and never change their input, so one of them can run on many images at once
+@FunctionalInterface
+public interface ImageOperation {
+	public BufferedImage apply(BufferedImage image);
+
+	public default ImageOperation andThen(ImageOperation next) {
+		return image -> next.apply(apply(image));
+	}
+}
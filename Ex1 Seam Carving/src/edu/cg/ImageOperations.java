@@ -0,0 +1,172 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+// makes the operations of ImageProcessor as immutable ImageOperation objects. the loop bounds
+// come from the image every operation gets, so a configured operation can be shared by threads
+// and run on images of any size. ImageProcessor runs its operations through these.
+public final class ImageOperations {
+	private final int grain;
+	private final ForkJoinPool pool;
+
+	public ImageOperations() {
+		this(FunctioalForEachLoops.DEFAULT_GRAIN, ForkJoinPool.commonPool());
+	}
+
+	// the rows of an image are split between the threads of pool in bands of at least grain pixels
+	public ImageOperations(int grain, ForkJoinPool pool) {
+		if (grain < 1)
+			throw new IllegalArgumentException("Grain must be positive");
+		this.grain = grain;
+		this.pool = pool;
+	}
+
+	//MARK: Operations
+	public ImageOperation changeHue(RGBWeights rgbWeights) {
+		return lookup(ColorLookup.changeHue(rgbWeights));
+	}
+
+	public ImageOperation greyscale(RGBWeights rgbWeights) {
+		return lookup(ColorLookup.greyscale(rgbWeights));
+	}
+
+	// a point color operation, compose lookups with ColorLookup.andThen to apply them in one pass
+	public ImageOperation lookup(ColorLookup lookup) {
+		return image -> {
+			int width = image.getWidth();
+			BufferedImage ans = new BufferedImage(width, image.getHeight(), outputType(image));
+			ImagePixels in = ImagePixels.of(image);
+			ImagePixels out = ImagePixels.of(ans);
+
+			forEachBand(width, image.getHeight(), (fromY, toY) -> {
+				int[] row = new int[width];
+				for (int y = fromY; y < toY; y++) {
+					in.readRow(y, row, 0);
+					lookup.apply(row, 0, width);
+					out.writeRow(y, row, 0);
+				}
+			});
+			return ans;
+		};
+	}
+
+	public ImageOperation gradientMagnitude(RGBWeights rgbWeights) {
+		ImageOperation greyscale = greyscale(rgbWeights);
+
+		return image -> {
+			int width = image.getWidth();
+			int height = image.getHeight();
+			//In case the image dimenssions are too small
+			if (width < 2)
+				throw new IllegalArgumentException("Width value is too small - Change the value");
+			if (height < 2)
+				throw new IllegalArgumentException("Height value is too small - Change the value");
+
+			BufferedImage ans = new BufferedImage(width, height, outputType(image));
+			// read back from the grey image, its type may not keep the grey levels exactly
+			int[] grey = ImagePixels.of(greyscale.apply(image)).readAll();
+			ImagePixels out = ImagePixels.of(ans);
+
+			forEachBand(width, height, (fromY, toY) -> {
+				int[] row = new int[width];
+				for (int y = fromY; y < toY; y++) {
+					int nextYpix = (y + 1 == height) ? y - 1 : y + 1;
+					for (int x = 0; x < width; x++) {
+						int nextXpix = (x + 1 == width) ? x - 1 : x + 1;
+
+						int currPixGrey = grey[y * width + x];
+						int nextXpixGrey = grey[y * width + nextXpix];
+						int nextYpixGrey = grey[nextYpix * width + x];
+
+						//calculating magnitude for each color
+						int magRed = magnitude(currPixGrey >> 16, nextXpixGrey >> 16, nextYpixGrey >> 16);
+						int magGreen = magnitude(currPixGrey >> 8, nextXpixGrey >> 8, nextYpixGrey >> 8);
+						int magBlue = magnitude(currPixGrey, nextXpixGrey, nextYpixGrey);
+
+						row[x] = toRGB(magRed, magGreen, magBlue);
+					}
+					out.writeRow(y, row, 0);
+				}
+			});
+			return ans;
+		};
+	}
+
+	public ImageOperation nearestNeighbor(int outWidth, int outHeight) {
+		return image -> Resampler.nearestNeighbor(image, outWidth, outHeight, grain, pool);
+	}
+
+	public ImageOperation bilinear(int outWidth, int outHeight) {
+		return resample(ResamplingKernel.BILINEAR, outWidth, outHeight);
+	}
+
+	public ImageOperation bicubic(int outWidth, int outHeight) {
+		return resample(ResamplingKernel.BICUBIC, outWidth, outHeight);
+	}
+
+	public ImageOperation lanczos(int outWidth, int outHeight) {
+		return resample(ResamplingKernel.LANCZOS3, outWidth, outHeight);
+	}
+
+	// answers TYPE_INT_RGB images
+	public ImageOperation resample(ResamplingKernel kernel, int outWidth, int outHeight) {
+		return image -> Resampler.resample(image, outWidth, outHeight, kernel, grain, pool);
+	}
+
+	public ImageOperation duplicate() {
+		return image -> {
+			int width = image.getWidth();
+			BufferedImage ans = new BufferedImage(width, image.getHeight(), outputType(image));
+			ImagePixels in = ImagePixels.of(image);
+			ImagePixels out = ImagePixels.of(ans);
+
+			forEachBand(width, image.getHeight(), (fromY, toY) -> {
+				int[] row = new int[width];
+				for (int y = fromY; y < toY; y++) {
+					in.readRow(y, row, 0);
+					out.writeRow(y, row, 0);
+				}
+			});
+			return ans;
+		};
+	}
+
+	// a new SeamsCarver is made for every image, so the carve state is never shared
+	public ImageOperation seamCarving(RGBWeights rgbWeights, int outWidth) {
+		return image -> {
+			SeamsCarver carver = new SeamsCarver(s -> { }, image, outWidth, rgbWeights, true);
+			carver.setForEachPool(pool);
+			return carver.resize();
+		};
+	}
+
+	//MARK: Utilities
+	// every band has its own row buffer, so a buffer is made per band and not per row
+	private void forEachBand(int width, int height, FunctioalForEachLoops.BandAction action) {
+		FunctioalForEachLoops.parallelForEachBand(width, height, grain, pool, action);
+	}
+
+	// the type of the images the operations make from image, the type of image unless it is a
+	// custom type, which can not be made by type
+	static int outputType(BufferedImage image) {
+		if (image.getType() != BufferedImage.TYPE_CUSTOM)
+			return image.getType();
+		return image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+	}
+
+	// the magnitude of the gradient of one color channel, the lowest byte of the arguments
+	static int magnitude(int curr, int nextX, int nextY) {
+		int dx = (curr & 0xFF) - (nextX & 0xFF);
+		int dy = (curr & 0xFF) - (nextY & 0xFF);
+		return Math.min((int) Math.sqrt((dx * dx + dy * dy) / 2.0), 255);
+	}
+
+	// an opaque color of channels clamped to 0 - 255
+	static int toRGB(int red, int green, int blue) {
+		red = Math.max(0, Math.min(red, 255));
+		green = Math.max(0, Math.min(green, 255));
+		blue = Math.max(0, Math.min(blue, 255));
+		return 0xFF000000 | red << 16 | green << 8 | blue;
+	}
+}
@@ -0,0 +1,336 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// a chain of operations that is run in one pass, without an image between the stages.
+// the output is computed in bands of rows, and every stage computes the rows of its input
+// it needs on demand into a few row buffers, so a stage costs rows and not images. point
+// stages in a row are fused into one, and lookups in a row are composed into one ColorLookup.
+// a pipeline is immutable, adding a stage makes a new one.
+// the stages work on exact pixels, so unlike ImageOperations.gradientMagnitude, the grey levels
+// are not rounded to the type of the image between greyscale and gradientMagnitude.
+public final class ImagePipeline implements ImageOperation {
+	@FunctionalInterface
+	public interface PixelMap {
+		int apply(int argb);
+
+		default PixelMap andThen(PixelMap next) {
+			return argb -> next.apply(apply(argb));
+		}
+	}
+
+	// the row buffers of a stage, enough for the stencils and nearestNeighbor to read rows y and y + 1
+	private static final int ROWS_PER_STAGE = 3;
+
+	private final List<Stage> stages;
+	private final int grain;
+	private final ForkJoinPool pool;
+
+	public ImagePipeline() {
+		this(FunctioalForEachLoops.DEFAULT_GRAIN, ForkJoinPool.commonPool());
+	}
+
+	// the output rows are split between the threads of pool in bands of at least grain pixels
+	public ImagePipeline(int grain, ForkJoinPool pool) {
+		this(Collections.<Stage>emptyList(), grain, pool);
+		if (grain < 1)
+			throw new IllegalArgumentException("Grain must be positive");
+	}
+
+	private ImagePipeline(List<Stage> stages, int grain, ForkJoinPool pool) {
+		this.stages = stages;
+		this.grain = grain;
+		this.pool = pool;
+	}
+
+	//MARK: Stages
+	public ImagePipeline map(PixelMap map) {
+		Stage last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+		if (last instanceof PointStage)
+			return replaceLast(new PointStage(((PointStage) last).map.andThen(map)));
+		if (last instanceof LookupStage) {
+			PixelMap lookup = ((LookupStage) last).lookup::apply;
+			return replaceLast(new PointStage(lookup.andThen(map)));
+		}
+		return add(new PointStage(map));
+	}
+
+	// consecutive lookups are composed into one before any pixel is read
+	public ImagePipeline lookup(ColorLookup lookup) {
+		Stage last = stages.isEmpty() ? null : stages.get(stages.size() - 1);
+		if (last instanceof LookupStage)
+			return replaceLast(new LookupStage(((LookupStage) last).lookup.andThen(lookup)));
+		return add(new LookupStage(lookup));
+	}
+
+	public ImagePipeline changeHue(RGBWeights rgbWeights) {
+		return lookup(ColorLookup.changeHue(rgbWeights));
+	}
+
+	public ImagePipeline greyscale(RGBWeights rgbWeights) {
+		return lookup(ColorLookup.greyscale(rgbWeights));
+	}
+
+	// the gradient magnitude of every channel, greyscale first for the one of ImageOperations
+	public ImagePipeline gradientMagnitude() {
+		return add(source -> new GradientRows(source));
+	}
+
+	public ImagePipeline nearestNeighbor(int outWidth, int outHeight) {
+		return add(source -> new NearestNeighborRows(source, outWidth, outHeight));
+	}
+
+	public ImagePipeline bilinear(int outWidth, int outHeight) {
+		return resample(ResamplingKernel.BILINEAR, outWidth, outHeight);
+	}
+
+	public ImagePipeline resample(ResamplingKernel kernel, int outWidth, int outHeight) {
+		return add(source -> new ResampledRows(source, kernel, outWidth, outHeight));
+	}
+
+	private ImagePipeline add(Stage stage) {
+		List<Stage> next = new ArrayList<>(stages);
+		next.add(stage);
+		return new ImagePipeline(Collections.unmodifiableList(next), grain, pool);
+	}
+
+	private ImagePipeline replaceLast(Stage stage) {
+		List<Stage> next = new ArrayList<>(stages);
+		next.set(next.size() - 1, stage);
+		return new ImagePipeline(Collections.unmodifiableList(next), grain, pool);
+	}
+
+	//MARK: Running
+	// a new image of the type the chain of ImageOperations of the stages answers: TYPE_INT_RGB
+	// after a resample, and otherwise the type of image, or INT_RGB or INT_ARGB for custom types
+	@Override
+	public BufferedImage apply(BufferedImage image) {
+		Rows sizes = bind(image);
+		int width = sizes.width;
+		int height = sizes.height;
+		BufferedImage ans = new BufferedImage(width, height, outputType(sizes, image));
+		ImagePixels out = ImagePixels.of(ans);
+
+		// every band binds its own rows, so the row buffers are never shared by threads
+		FunctioalForEachLoops.parallelForEachBand(width, height, grain, pool, (fromY, toY) -> {
+			Rows rows = fromY == 0 && toY == height ? sizes : bind(image);
+			for (int y = fromY; y < toY; y++)
+				out.writeRow(y, rows.row(y), 0);
+		});
+		return ans;
+	}
+
+	// the number of pixels the stages keep in row buffers while one band is computed,
+	// against the width * height of every image a chain of ImageOperations makes
+	public long bufferedPixels(BufferedImage image) {
+		long pixels = 0;
+		for (Rows rows = bind(image); rows != null; rows = rows.source)
+			pixels += (long) rows.buffers.length * rows.width;
+		return pixels;
+	}
+
+	private static int outputType(Rows rows, BufferedImage image) {
+		for (; rows != null; rows = rows.source) {
+			if (rows instanceof ResampledRows)
+				return BufferedImage.TYPE_INT_RGB;
+		}
+		return ImageOperations.outputType(image);
+	}
+
+	private Rows bind(BufferedImage image) {
+		Rows rows = new ImageRows(ImagePixels.of(image));
+		for (Stage stage : stages)
+			rows = stage.bind(rows);
+		return rows;
+	}
+
+	//MARK: Rows
+	@FunctionalInterface
+	private interface Stage {
+		Rows bind(Rows source);
+	}
+
+	// the rows of a stage, each computed once into one of a few buffers that are reused in turn
+	private abstract static class Rows {
+		final Rows source;
+		final int width;
+		final int height;
+		private final int[][] buffers;
+		private final int[] keys;
+		private int next;
+
+		Rows(Rows source, int width, int height) {
+			this(source, width, height, ROWS_PER_STAGE);
+		}
+
+		Rows(Rows source, int width, int height, int buffers) {
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.buffers = new int[buffers][];
+			keys = new int[buffers];
+			for (int i = 0; i < buffers; i++)
+				keys[i] = -1;
+		}
+
+		// row y, valid until as many other rows as there are buffers are asked for
+		final int[] row(int y) {
+			for (int i = 0; i < buffers.length; i++) {
+				if (keys[i] == y)
+					return buffers[i];
+			}
+
+			if (buffers[next] == null)
+				buffers[next] = new int[width];
+			int[] row = buffers[next];
+			keys[next] = y;
+			next = (next + 1) % buffers.length;
+			compute(y, row);
+			return row;
+		}
+
+		abstract void compute(int y, int[] row);
+	}
+
+	private static final class ImageRows extends Rows {
+		private final ImagePixels pixels;
+
+		ImageRows(ImagePixels pixels) {
+			super(null, pixels.width, pixels.height);
+			this.pixels = pixels;
+		}
+
+		@Override
+		void compute(int y, int[] row) {
+			pixels.readRow(y, row, 0);
+		}
+	}
+
+	private static final class PointStage implements Stage {
+		final PixelMap map;
+
+		PointStage(PixelMap map) {
+			this.map = map;
+		}
+
+		@Override
+		public Rows bind(Rows source) {
+			return new Rows(source, source.width, source.height) {
+				@Override
+				void compute(int y, int[] row) {
+					int[] in = source.row(y);
+					for (int x = 0; x < width; x++)
+						row[x] = map.apply(in[x]);
+				}
+			};
+		}
+	}
+
+	private static final class LookupStage implements Stage {
+		final ColorLookup lookup;
+
+		LookupStage(ColorLookup lookup) {
+			this.lookup = lookup;
+		}
+
+		@Override
+		public Rows bind(Rows source) {
+			return new Rows(source, source.width, source.height) {
+				@Override
+				void compute(int y, int[] row) {
+					System.arraycopy(source.row(y), 0, row, 0, width);
+					lookup.apply(row, 0, width);
+				}
+			};
+		}
+	}
+
+	private static final class GradientRows extends Rows {
+		GradientRows(Rows source) {
+			super(source, source.width, source.height);
+			//In case the image dimenssions are too small
+			if (width < 2)
+				throw new IllegalArgumentException("Width value is too small - Change the value");
+			if (height < 2)
+				throw new IllegalArgumentException("Height value is too small - Change the value");
+		}
+
+		@Override
+		void compute(int y, int[] row) {
+			int[] curr = source.row(y);
+			int[] next = source.row((y + 1 == height) ? y - 1 : y + 1);
+			for (int x = 0; x < width; x++) {
+				int nextXpix = (x + 1 == width) ? x - 1 : x + 1;
+				int magRed = ImageOperations.magnitude(curr[x] >> 16, curr[nextXpix] >> 16, next[x] >> 16);
+				int magGreen = ImageOperations.magnitude(curr[x] >> 8, curr[nextXpix] >> 8, next[x] >> 8);
+				int magBlue = ImageOperations.magnitude(curr[x], curr[nextXpix], next[x]);
+				row[x] = ImageOperations.toRGB(magRed, magGreen, magBlue);
+			}
+		}
+	}
+
+	// the same samples as ImageOperations.nearestNeighbor
+	private static final class NearestNeighborRows extends Rows {
+		private final int[] columns;
+		private final int[] rows;
+
+		NearestNeighborRows(Rows source, int outWidth, int outHeight) {
+			super(source, outWidth, outHeight);
+			columns = Resampler.nearestIndices(source.width, outWidth);
+			rows = Resampler.nearestIndices(source.height, outHeight);
+		}
+
+		@Override
+		void compute(int y, int[] row) {
+			Resampler.gather(source.row(rows[y]), columns, row);
+		}
+	}
+
+	// the rows of the source resampled to the output width, three fixed point channels a pixel.
+	// a buffer more than the taps of a row, which are asked for in order and all needed at once
+	private static final class HorizontalRows extends Rows {
+		private final Resampler.Weights horizontal;
+
+		HorizontalRows(Rows source, Resampler.Weights horizontal, int taps) {
+			super(source, 3 * horizontal.outSize, source.height, taps + 1);
+			this.horizontal = horizontal;
+		}
+
+		@Override
+		void compute(int y, int[] row) {
+			Resampler.horizontalRow(source.row(y), horizontal, row);
+		}
+	}
+
+	// the same samples as ImageOperations.resample
+	private static final class ResampledRows extends Rows {
+		private final Resampler.Weights vertical;
+		private final int[][] taps;
+		private final int[] sum;
+
+		ResampledRows(Rows source, ResamplingKernel kernel, int outWidth, int outHeight) {
+			this(source, Resampler.weights(kernel, source.width, outWidth),
+					Resampler.weights(kernel, source.height, outHeight));
+		}
+
+		private ResampledRows(Rows source, Resampler.Weights horizontal, Resampler.Weights vertical) {
+			super(new HorizontalRows(source, horizontal, vertical.taps), horizontal.outSize, vertical.outSize);
+			this.vertical = vertical;
+			taps = new int[vertical.taps][];
+			sum = new int[3 * horizontal.outSize];
+		}
+
+		@Override
+		void compute(int y, int[] row) {
+			for (int k = 0; k < taps.length; k++) {
+				int t = y * vertical.taps + k;
+				taps[k] = source.row(vertical.indices[t]);
+			}
+			Resampler.verticalRow(taps, vertical.weights, y * vertical.taps, sum, row);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package edu.cg;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// compares a greyscale -> gradient -> resize chain of ImageOperations, an image after every
+// step as in the menu, with the same chain fused by ImagePipeline. both run on this thread,
+// so the allocated bytes of the thread are the memory the chain used. first it checks that the
+// pipeline answers the type and the pixels of the chain, also for BGR and custom type images.
+// usage: ImagePipelineBenchmark [width] [height] [rounds]
+public class ImagePipelineBenchmark {
+	private final BufferedImage image;
+	private final ImageOperation chain;
+	private final ImagePipeline pipeline;
+
+	public ImagePipelineBenchmark(int width, int height, long seed) {
+		this(image(width, height, BufferedImage.TYPE_INT_RGB, seed), false);
+	}
+
+	// the chain and the pipeline resize with bilinear instead of nearest neighbor
+	private ImagePipelineBenchmark(BufferedImage image, boolean bilinear) {
+		this.image = image;
+		int width = image.getWidth() / 2;
+		int height = image.getHeight() / 2;
+		RGBWeights rgbWeights = new RGBWeights(1, 1, 1);
+		ForkJoinPool sequential = new ForkJoinPool(1);
+		ImageOperations operations = new ImageOperations(FunctioalForEachLoops.DEFAULT_GRAIN, sequential);
+		ImagePipeline fused = new ImagePipeline(FunctioalForEachLoops.DEFAULT_GRAIN, sequential)
+				.greyscale(rgbWeights)
+				.gradientMagnitude();
+		chain = operations.greyscale(rgbWeights)
+				.andThen(operations.gradientMagnitude(rgbWeights))
+				.andThen(bilinear ? operations.bilinear(width, height) : operations.nearestNeighbor(width, height));
+		pipeline = bilinear ? fused.bilinear(width, height) : fused.nearestNeighbor(width, height);
+	}
+
+	// random opaque colors, TYPE_CUSTOM is an interleaved RGB raster, as ImageIO reads some PNGs
+	private static BufferedImage image(int width, int height, int type, long seed) {
+		BufferedImage image;
+		if (type == BufferedImage.TYPE_CUSTOM) {
+			ColorModel cm = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), false, false,
+					Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+			image = new BufferedImage(cm, Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, width, height, 3, null),
+					false, null);
+		} else {
+			image = new BufferedImage(width, height, type);
+		}
+		Random random = new Random(seed);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++)
+				image.setRGB(x, y, random.nextInt(1 << 24));
+		}
+		return image;
+	}
+
+	//MARK: Checking
+	// throws when the pipeline does not answer the type and the pixels of the chain
+	private void check() {
+		BufferedImage expected = chain.apply(image);
+		BufferedImage actual = pipeline.apply(image);
+		if (expected.getType() != actual.getType() || !same(expected, actual))
+			throw new IllegalStateException("The pipeline does not match the chain of operations on an image of type "
+					+ image.getType());
+	}
+
+	private static void checkTypes() {
+		int[] types = { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_CUSTOM };
+		for (int type : types) {
+			BufferedImage image = image(97, 61, type, type);
+			new ImagePipelineBenchmark(image, false).check();
+			new ImagePipelineBenchmark(image, true).check();
+		}
+	}
+
+	//MARK: Measuring
+	// the best time in ns and the bytes allocated by that round
+	private static long[] measure(ImageOperation operation, BufferedImage image, int rounds) {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long[] best = { Long.MAX_VALUE, 0 };
+		for (int r = 0; r < rounds; r++) {
+			long bytes = allocatedBytes(threads);
+			long start = System.nanoTime();
+			operation.apply(image);
+			long time = System.nanoTime() - start;
+			if (time < best[0]) {
+				best[0] = time;
+				best[1] = allocatedBytes(threads) - bytes;
+			}
+		}
+		return best;
+	}
+
+	// -1 where the JVM does not count the allocations of a thread
+	private static long allocatedBytes(ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	private static boolean same(BufferedImage a, BufferedImage b) {
+		int[] pa = ImagePixels.of(a).readAll();
+		int[] pb = ImagePixels.of(b).readAll();
+		return a.getWidth() == b.getWidth() && Arrays.equals(pa, pb);
+	}
+
+	public static void main(String[] args) {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 1920;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 1080;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		checkTypes();
+		ImagePipelineBenchmark bench = new ImagePipelineBenchmark(width, height, 1);
+		bench.check();
+
+		long[] chain = measure(bench.chain, bench.image, rounds);
+		long[] pipeline = measure(bench.pipeline, bench.image, rounds);
+		// the chain writes and reads back a grey image, the grey image of the gradient and its
+		// pixels, and the gradient image, the pipeline keeps its rows in row buffers
+		long chainPixels = 4L * width * height;
+		long pipelinePixels = bench.pipeline.bufferedPixels(bench.image);
+
+		System.out.println("Image: " + width + "x" + height + " -> " + width / 2 + "x" + height / 2
+				+ ", best of " + rounds + " rounds");
+		System.out.printf("chain:    %d ms, %.1f MB allocated, %d intermediate pixels%n",
+				chain[0] / 1000000, chain[1] / 1e6, chainPixels);
+		System.out.printf("pipeline: %d ms, %.1f MB allocated, %d buffered pixels%n",
+				pipeline[0] / 1000000, pipeline[1] / 1e6, pipelinePixels);
+		System.out.printf("speedup %.2fx, %.1fx less memory allocated%n",
+				chain[0] / (double) pipeline[0], chain[1] / (double) Math.max(pipeline[1], 1));
+	}
+}
@@ -0,0 +1,225 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+// reads and writes the pixels of an image as packed ARGB ints, a row at a time. the common image
+// types are accessed straight in their data buffer, and every other type through getRGB/setRGB.
+// the pixels are exactly the ones BufferedImage.getRGB returns and setRGB stores.
+abstract class ImagePixels {
+	final BufferedImage image;
+	final int width;
+	final int height;
+
+	private ImagePixels(BufferedImage image) {
+		this.image = image;
+		width = image.getWidth();
+		height = image.getHeight();
+	}
+
+	static ImagePixels of(BufferedImage image) {
+		WritableRaster raster = image.getRaster();
+		SampleModel sm = raster.getSampleModel();
+		DataBuffer buffer = raster.getDataBuffer();
+
+		switch (image.getType()) {
+			case BufferedImage.TYPE_INT_RGB:
+			case BufferedImage.TYPE_INT_ARGB:
+				if (sm instanceof SinglePixelPackedSampleModel && buffer instanceof DataBufferInt)
+					return new IntPixels(image, image.getType() == BufferedImage.TYPE_INT_ARGB);
+				break;
+			case BufferedImage.TYPE_3BYTE_BGR:
+				if (sm instanceof ComponentSampleModel && buffer instanceof DataBufferByte)
+					return new BgrPixels(image);
+				break;
+			case BufferedImage.TYPE_BYTE_GRAY:
+				if (sm instanceof ComponentSampleModel && buffer instanceof DataBufferByte)
+					return new GrayPixels(image);
+				break;
+			default:
+				break;
+		}
+		return new GenericPixels(image);
+	}
+
+	// reads the width pixels of row y into argb from offset on
+	abstract void readRow(int y, int[] argb, int offset);
+
+	// writes the width pixels of row y from argb from offset on
+	abstract void writeRow(int y, int[] argb, int offset);
+
+	// all the pixels, row after row
+	final int[] readAll() {
+		int[] argb = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			readRow(y, argb, y * width);
+		}
+		return argb;
+	}
+
+	final void writeAll(int[] argb) {
+		for (int y = 0; y < height; y++) {
+			writeRow(y, argb, y * width);
+		}
+	}
+
+	// the index of the first sample of row y in the data array of the raster
+	private static int rowStart(BufferedImage image, int y) {
+		WritableRaster raster = image.getRaster();
+		SampleModel sm = raster.getSampleModel();
+		int x0 = -raster.getSampleModelTranslateX();
+		int y0 = -raster.getSampleModelTranslateY() + y;
+		int offset = raster.getDataBuffer().getOffset();
+
+		if (sm instanceof SinglePixelPackedSampleModel)
+			return offset + ((SinglePixelPackedSampleModel) sm).getOffset(x0, y0);
+
+		// without the band offsets, the kernels add them
+		ComponentSampleModel csm = (ComponentSampleModel) sm;
+		return offset + y0 * csm.getScanlineStride() + x0 * csm.getPixelStride();
+	}
+
+	//MARK: Kernels
+	private static final class IntPixels extends ImagePixels {
+		private final int[] data;
+		private final boolean alpha;
+
+		IntPixels(BufferedImage image, boolean alpha) {
+			super(image);
+			data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			this.alpha = alpha;
+		}
+
+		@Override
+		void readRow(int y, int[] argb, int offset) {
+			int start = rowStart(image, y);
+			if (alpha) {
+				System.arraycopy(data, start, argb, offset, width);
+			} else {
+				for (int x = 0; x < width; x++) {
+					argb[offset + x] = 0xFF000000 | data[start + x];
+				}
+			}
+		}
+
+		@Override
+		void writeRow(int y, int[] argb, int offset) {
+			int start = rowStart(image, y);
+			if (alpha) {
+				System.arraycopy(argb, offset, data, start, width);
+			} else {
+				for (int x = 0; x < width; x++) {
+					data[start + x] = argb[offset + x] & 0xFFFFFF;
+				}
+			}
+		}
+	}
+
+	private static final class BgrPixels extends ImagePixels {
+		private final byte[] data;
+		private final int pixelStride;
+		private final int blue, green, red;
+
+		BgrPixels(BufferedImage image) {
+			super(image);
+			ComponentSampleModel sm = (ComponentSampleModel) image.getRaster().getSampleModel();
+			data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			pixelStride = sm.getPixelStride();
+			int[] bandOffsets = sm.getBandOffsets();
+			red = bandOffsets[0];
+			green = bandOffsets[1];
+			blue = bandOffsets[2];
+		}
+
+		@Override
+		void readRow(int y, int[] argb, int offset) {
+			for (int x = 0, pos = rowStart(image, y); x < width; x++, pos += pixelStride) {
+				argb[offset + x] = 0xFF000000
+						| (data[pos + red] & 0xFF) << 16
+						| (data[pos + green] & 0xFF) << 8
+						| (data[pos + blue] & 0xFF);
+			}
+		}
+
+		@Override
+		void writeRow(int y, int[] argb, int offset) {
+			int rgb;
+			for (int x = 0, pos = rowStart(image, y); x < width; x++, pos += pixelStride) {
+				rgb = argb[offset + x];
+				data[pos + red] = (byte) (rgb >> 16);
+				data[pos + green] = (byte) (rgb >> 8);
+				data[pos + blue] = (byte) rgb;
+			}
+		}
+	}
+
+	// the gray levels are not linear in sRGB, so they are converted by the color model of the
+	// image. the levels and the opaque grays are converted once into tables, other colors are rare
+	private static final class GrayPixels extends ImagePixels {
+		private final byte[] data;
+		private final int pixelStride;
+		private final int band;
+		private final ColorModel cm;
+		private final int[] levels = new int[256];
+		private final byte[] grays = new byte[256];
+
+		GrayPixels(BufferedImage image) {
+			super(image);
+			ComponentSampleModel sm = (ComponentSampleModel) image.getRaster().getSampleModel();
+			data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+			pixelStride = sm.getPixelStride();
+			band = sm.getBandOffsets()[0];
+			cm = image.getColorModel();
+			byte[] element = new byte[1];
+			for (int v = 0; v < 256; v++) {
+				element[0] = (byte) v;
+				levels[v] = cm.getRGB(element);
+				grays[v] = ((byte[]) cm.getDataElements(0xFF000000 | v * 0x010101, element))[0];
+			}
+		}
+
+		@Override
+		void readRow(int y, int[] argb, int offset) {
+			for (int x = 0, pos = rowStart(image, y); x < width; x++, pos += pixelStride) {
+				argb[offset + x] = levels[data[pos + band] & 0xFF];
+			}
+		}
+
+		@Override
+		void writeRow(int y, int[] argb, int offset) {
+			for (int x = 0, pos = rowStart(image, y); x < width; x++, pos += pixelStride) {
+				data[pos + band] = toGray(argb[offset + x]);
+			}
+		}
+
+		private byte toGray(int rgb) {
+			int v = rgb & 0xFF;
+			if ((rgb >>> 24) != 0xFF | ((rgb >> 16) & 0xFF) != v | ((rgb >> 8) & 0xFF) != v)
+				return ((byte[]) cm.getDataElements(rgb, null))[0];
+			return grays[v];
+		}
+	}
+
+	private static final class GenericPixels extends ImagePixels {
+		GenericPixels(BufferedImage image) {
+			super(image);
+		}
+
+		@Override
+		void readRow(int y, int[] argb, int offset) {
+			image.getRGB(0, y, width, 1, argb, offset, width);
+		}
+
+		@Override
+		void writeRow(int y, int[] argb, int offset) {
+			image.setRGB(0, y, width, 1, argb, offset, width);
+		}
+	}
+}
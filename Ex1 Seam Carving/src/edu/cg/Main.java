@@ -1,12 +1,17 @@
 package edu.cg;
+import edu.cg.batch.BatchRunner;
 import edu.cg.menu.MenuWindow;
 
 public class Main {
 	
 	/**
-	 * Launch the application.
+	 * Launch the application, or with arguments, run an operation on images without a display.
 	 */
-	public static void main(String[] args) {
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0) {
+			BatchRunner.main(args);
+			return;
+		}
 		MenuWindow mw = new MenuWindow();
 		mw.setVisible(true);
 	}
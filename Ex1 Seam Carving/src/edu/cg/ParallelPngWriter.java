@@ -0,0 +1,302 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// writes PNG files with the rows deflated in parallel, the way pigz compresses. the filtered
+// rows are cut into chunks of about CHUNK_SIZE bytes, and every chunk is deflated on its own,
+// primed with the last 32 KB of the chunk before it, and ended with a sync flush, so the chunks
+// join into one deflate stream. the adler32 of the stream is combined from those of the chunks.
+// every chunk is written as an IDAT chunk as soon as it and the ones before it are done, so only
+// a few chunks are in memory. the images are 8 bit RGB, or RGBA when they have alpha.
+public final class ParallelPngWriter {
+	public static final int DEFAULT_LEVEL = 6;
+	// the input of a deflate task, as pigz uses
+	private static final int CHUNK_SIZE = 128 * 1024;
+	// the window of deflate
+	private static final int DICTIONARY_SIZE = 32 * 1024;
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+	private final int level;
+	private final ForkJoinPool pool;
+
+	public ParallelPngWriter() {
+		this(DEFAULT_LEVEL, ForkJoinPool.commonPool());
+	}
+
+	// level is a Deflater level, 0 to 9
+	public ParallelPngWriter(int level, ForkJoinPool pool) {
+		if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException("Compression level must be 0 to 9");
+		this.level = level;
+		this.pool = pool;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	//MARK: Writing
+	public void write(BufferedImage image, File file) throws IOException {
+		try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), 1 << 16)) {
+			write(image, out);
+		}
+	}
+
+	public void write(BufferedImage image, OutputStream stream) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean alpha = image.getColorModel().hasAlpha();
+		int bpp = alpha ? 4 : 3;
+		int rowBytes = 1 + width * bpp;
+		int rowsPerChunk = Math.max(1, CHUNK_SIZE / rowBytes);
+		int chunks = (height + rowsPerChunk - 1) / rowsPerChunk;
+		ImagePixels pixels = ImagePixels.of(image);
+		DataOutputStream out = new DataOutputStream(stream);
+
+		out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8;
+		header[9] = (byte) (alpha ? 6 : 2);
+		writeChunk(out, "IHDR", header, header.length);
+
+		// the zlib header, its check bits make the two bytes a multiple of 31
+		int cmf = 0x78;
+		int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+		int flg = flevel << 6;
+		flg += 31 - (cmf * 256 + flg) % 31;
+		writeChunk(out, "IDAT", new byte[] { (byte) cmf, (byte) flg }, 2);
+
+		// a window of tasks ahead of the writing keeps the threads busy and the memory bounded
+		Deque<Future<Deflated>> window = new ArrayDeque<>();
+		int ahead = 2 * pool.getParallelism();
+		long adler = 1;
+		int next = 0;
+		try {
+			while (next < chunks || !window.isEmpty()) {
+				while (next < chunks && window.size() < ahead) {
+					int fromY = next * rowsPerChunk;
+					int toY = Math.min(height, fromY + rowsPerChunk);
+					boolean last = ++next == chunks;
+					window.add(pool.submit(() -> deflate(pixels, bpp, fromY, toY, last)));
+				}
+				Deflated chunk = window.remove().get();
+				writeChunk(out, "IDAT", chunk.data, chunk.length);
+				adler = combineAdler32(adler, chunk.adler, chunk.inputLength);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing the PNG", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to compress the PNG", e.getCause());
+		} finally {
+			for (Future<Deflated> future : window)
+				future.cancel(false);
+		}
+
+		byte[] trailer = new byte[4];
+		putInt(trailer, 0, (int) adler);
+		writeChunk(out, "IDAT", trailer, 4);
+		writeChunk(out, "IEND", new byte[0], 0);
+		out.flush();
+	}
+
+	//MARK: Compression
+	private static final class Deflated {
+		final byte[] data;
+		final int length;
+		final long adler;
+		final int inputLength;
+
+		Deflated(byte[] data, int length, long adler, int inputLength) {
+			this.data = data;
+			this.length = length;
+			this.adler = adler;
+			this.inputLength = inputLength;
+		}
+	}
+
+	// the filtered rows [fromY, toY) deflated, primed with the filtered rows before them
+	private Deflated deflate(ImagePixels pixels, int bpp, int fromY, int toY, boolean last) {
+		int rowBytes = 1 + pixels.width * bpp;
+		int dictionaryRows = fromY == 0 ? 0 : Math.min(fromY, (DICTIONARY_SIZE + rowBytes - 1) / rowBytes);
+		int firstY = fromY - dictionaryRows;
+		byte[] filtered = new byte[(toY - firstY) * rowBytes];
+
+		int[] argb = new int[pixels.width];
+		byte[] previous = new byte[pixels.width * bpp];
+		byte[] current = new byte[pixels.width * bpp];
+		byte[][] scratch = new byte[5][pixels.width * bpp];
+		if (firstY > 0) {
+			pixels.readRow(firstY - 1, argb, 0);
+			toBytes(argb, bpp, previous);
+		}
+		for (int y = firstY; y < toY; y++) {
+			pixels.readRow(y, argb, 0);
+			toBytes(argb, bpp, current);
+			filterRow(current, previous, bpp, scratch, filtered, (y - firstY) * rowBytes);
+			byte[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		int dictionaryLength = Math.min(DICTIONARY_SIZE, dictionaryRows * rowBytes);
+		int start = dictionaryRows * rowBytes;
+		int inputLength = filtered.length - start;
+		Deflater deflater = new Deflater(level, true);
+		try {
+			if (dictionaryLength > 0)
+				deflater.setDictionary(filtered, start - dictionaryLength, dictionaryLength);
+			deflater.setInput(filtered, start, inputLength);
+
+			byte[] out = new byte[inputLength + inputLength / 1000 + 64];
+			int length = 0;
+			if (last)
+				deflater.finish();
+			while (true) {
+				if (length == out.length)
+					out = Arrays.copyOf(out, 2 * out.length);
+				int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+				length += deflater.deflate(out, length, out.length - length, flush);
+				// done when the stream is finished, or when a sync flush left room in the buffer
+				if (last ? deflater.finished() : length < out.length)
+					break;
+			}
+
+			Adler32 adler = new Adler32();
+			adler.update(filtered, start, inputLength);
+			return new Deflated(out, length, adler.getValue(), inputLength);
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static void toBytes(int[] argb, int bpp, byte[] row) {
+		for (int x = 0, i = 0; x < argb.length; x++) {
+			int c = argb[x];
+			row[i++] = (byte) (c >> 16);
+			row[i++] = (byte) (c >> 8);
+			row[i++] = (byte) c;
+			if (bpp == 4)
+				row[i++] = (byte) (c >>> 24);
+		}
+	}
+
+	// the filter type and the filtered row at offset, the filter of the smallest sum of absolute
+	// differences, as libpng chooses. stored rows are left unfiltered. scratch holds a row a filter
+	private void filterRow(byte[] row, byte[] previous, int bpp, byte[][] scratch, byte[] out, int offset) {
+		int length = row.length;
+		int best = 0;
+		if (level != Deflater.NO_COMPRESSION) {
+			long bestSum = Long.MAX_VALUE;
+			for (int filter = 0; filter < 5; filter++) {
+				long sum = filter(filter, row, previous, bpp, scratch[filter]);
+				if (sum < bestSum) {
+					bestSum = sum;
+					best = filter;
+				}
+			}
+		}
+
+		out[offset] = (byte) best;
+		System.arraycopy(best == 0 ? row : scratch[best], 0, out, offset + 1, length);
+	}
+
+	// the row filtered into filtered, and the sum of the absolute values of its signed bytes
+	private static long filter(int filter, byte[] row, byte[] previous, int bpp, byte[] filtered) {
+		int length = row.length;
+		long sum = 0;
+		switch (filter) {
+			case 0:
+				for (int i = 0; i < length; i++)
+					sum += Math.abs(row[i]);
+				return sum;
+			case 1:
+				for (int i = 0; i < length; i++) {
+					int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+					filtered[i] = (byte) ((row[i] & 0xFF) - a);
+					sum += Math.abs(filtered[i]);
+				}
+				return sum;
+			case 2:
+				for (int i = 0; i < length; i++) {
+					filtered[i] = (byte) ((row[i] & 0xFF) - (previous[i] & 0xFF));
+					sum += Math.abs(filtered[i]);
+				}
+				return sum;
+			case 3:
+				for (int i = 0; i < length; i++) {
+					int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+					filtered[i] = (byte) ((row[i] & 0xFF) - ((a + (previous[i] & 0xFF)) >> 1));
+					sum += Math.abs(filtered[i]);
+				}
+				return sum;
+			default:
+				for (int i = 0; i < length; i++) {
+					int a = i >= bpp ? row[i - bpp] & 0xFF : 0;
+					int b = previous[i] & 0xFF;
+					int c = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+					int p = a + b - c;
+					int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+					filtered[i] = (byte) ((row[i] & 0xFF) - (pa <= pb && pa <= pc ? a : pb <= pc ? b : c));
+					sum += Math.abs(filtered[i]);
+				}
+				return sum;
+		}
+	}
+
+	// the adler32 of two joined inputs from theirs, as zlib's adler32_combine
+	static long combineAdler32(long adler1, long adler2, long length2) {
+		final long base = 65521;
+		long rem = length2 % base;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = (rem * sum1) % base;
+		sum1 += (adler2 & 0xFFFF) + base - 1;
+		sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + base - rem;
+		if (sum1 >= base)
+			sum1 -= base;
+		if (sum1 >= base)
+			sum1 -= base;
+		if (sum2 >= 2 * base)
+			sum2 -= 2 * base;
+		if (sum2 >= base)
+			sum2 -= base;
+		return sum1 | (sum2 << 16);
+	}
+
+	//MARK: Chunks
+	private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(data, 0, length);
+		out.writeInt(length);
+		out.write(name);
+		out.write(data, 0, length);
+		out.writeInt((int) crc.getValue());
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+}
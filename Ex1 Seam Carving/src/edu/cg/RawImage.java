@@ -0,0 +1,180 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Arrays;
+import java.util.Random;
+
+// an uncompressed image file for saving and loading the images between runs, written and read
+// through memory mapped files. the file is a header of HEADER_SIZE bytes and then the packed
+// ARGB ints of the pixels, row after row, in the byte order of the machine that wrote them:
+//   8 bytes  MAGIC
+//   int      VERSION
+//   int      width
+//   int      height
+//   int      BufferedImage.TYPE_INT_RGB or TYPE_INT_ARGB, the type of the loaded image
+//   int      1 for little endian pixels, 0 for big endian
+//   int      reserved, 0
+// the header is big endian. the pixels are copied between the mapping and the int[] of the
+// DataBufferInt of the image in one bulk transfer, with nothing decoded or buffered between them.
+public final class RawImage {
+	public static final String EXTENSION = "cgraw";
+	public static final int HEADER_SIZE = 32;
+	private static final byte[] MAGIC = "CGRAWIMG".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	// a mapping is at most 2 GB, larger images are mapped a part at a time
+	private static final long MAX_MAPPING = 1L << 30;
+	private static final Random RANDOM = new Random();
+
+	private RawImage() {
+	}
+
+	//MARK: Detection
+	// whether the file starts with the magic of the format, the extension does not matter
+	public static boolean isRaw(File file) {
+		if (!file.isFile() || file.length() < HEADER_SIZE)
+			return false;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+			}
+			return Arrays.equals(magic.array(), MAGIC);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	//MARK: Reading
+	public static BufferedImage read(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			byte[] magic = new byte[MAGIC.length];
+			header.get(magic);
+			if (!Arrays.equals(magic, MAGIC))
+				throw new IOException("Not a raw image: " + file);
+			int version = header.getInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported raw image version " + version + ": " + file);
+			int width = header.getInt();
+			int height = header.getInt();
+			int type = header.getInt();
+			ByteOrder order = header.getInt() == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+			if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE - 8)
+				throw new IOException("Bad raw image size " + width + "x" + height + ": " + file);
+			if (type != BufferedImage.TYPE_INT_RGB && type != BufferedImage.TYPE_INT_ARGB)
+				throw new IOException("Bad raw image type " + type + ": " + file);
+			if (channel.size() < HEADER_SIZE + 4L * width * height)
+				throw new IOException("Truncated raw image: " + file);
+
+			BufferedImage image = new BufferedImage(width, height, type);
+			int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			transfer(channel, FileChannel.MapMode.READ_ONLY, order, pixels, width, height);
+			return image;
+		}
+	}
+
+	//MARK: Writing
+	// images that are not a plain TYPE_INT_RGB or TYPE_INT_ARGB image are written as TYPE_INT_ARGB
+	public static void write(BufferedImage image, File file) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int type = image.getType();
+		int[] pixels;
+		if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB) && isPlain(image)) {
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		} else {
+			type = BufferedImage.TYPE_INT_ARGB;
+			pixels = ImagePixels.of(image).readAll();
+		}
+
+		// written next to the file and moved over it, so a failed write leaves the file as it was.
+		// the move does not replace a file that is still mapped by an earlier read on Windows, as the
+		// mappings are only unmapped when they are collected
+		Path target = file.toPath().toAbsolutePath();
+		Path temp = createSibling(target);
+		try {
+			ByteOrder order = ByteOrder.nativeOrder();
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				ByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+				header.put(MAGIC);
+				header.putInt(VERSION);
+				header.putInt(width);
+				header.putInt(height);
+				header.putInt(type);
+				header.putInt(order == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+				header.putInt(0);
+				transfer(channel, FileChannel.MapMode.READ_WRITE, order, pixels, width, height);
+			}
+			copyPermissions(target, temp);
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	// a new empty file next to target, with the default permissions that Files.createTempFile
+	// narrows to the owner
+	private static Path createSibling(Path target) throws IOException {
+		while (true) {
+			Path path = target.resolveSibling(target.getFileName() + "." + Long.toHexString(RANDOM.nextLong()) + ".tmp");
+			try {
+				Files.newByteChannel(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+				return path;
+			} catch (FileAlreadyExistsException e) {
+				// taken, another name is tried
+			}
+		}
+	}
+
+	// the file that replaces target keeps its permissions, a new file has the default ones
+	private static void copyPermissions(Path target, Path temp) throws IOException {
+		PosixFileAttributeView from = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+		PosixFileAttributeView to = Files.getFileAttributeView(temp, PosixFileAttributeView.class);
+		if (!Files.exists(target) || from == null || to == null)
+			return;
+		to.setPermissions(from.readAttributes().permissions());
+	}
+
+	// the raster holds exactly the pixels of the image, row after row from the start of its array
+	private static boolean isPlain(BufferedImage image) {
+		WritableRaster raster = image.getRaster();
+		return raster.getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride() == image.getWidth()
+				&& raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+				&& raster.getDataBuffer().getOffset() == 0
+				&& raster.getDataBuffer().getSize() == image.getWidth() * image.getHeight();
+	}
+
+	// copies the pixels from the mapping, or to it when it is written, in parts of whole rows
+	private static void transfer(FileChannel channel, FileChannel.MapMode mode, ByteOrder order,
+			int[] pixels, int width, int height) throws IOException {
+		int rowsPerMapping = (int) Math.max(1, MAX_MAPPING / (4L * width));
+		for (int y = 0; y < height; y += rowsPerMapping) {
+			int rows = Math.min(rowsPerMapping, height - y);
+			MappedByteBuffer mapping = channel.map(mode, HEADER_SIZE + 4L * y * width, 4L * rows * width);
+			IntBuffer ints = mapping.order(order).asIntBuffer();
+			if (mode == FileChannel.MapMode.READ_ONLY) {
+				ints.get(pixels, y * width, rows * width);
+			} else {
+				ints.put(pixels, y * width, rows * width);
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// resizes images with tables made once per axis: the source index of every output column and
+// row, and for the filters, the fixed point weights of their source pixels. the filters run in
+// two passes, the rows of the source are resampled horizontally and then the columns vertically,
+// both row after row in bands of rows. the colors are opaque.
+final class Resampler {
+	// the weights of a sample sum to ONE
+	static final int ONE = 1 << 14;
+	// the horizontal pass keeps the channels with FRACTION_BITS bits of fraction
+	private static final int FRACTION_BITS = 7;
+	private static final int VERTICAL_SHIFT = 14 + FRACTION_BITS;
+	// the weights of the last axes, images are resized to a few sizes again and again
+	private static final int CACHED_WEIGHTS = 32;
+	private static final Map<String, Weights> cache = new LinkedHashMap<String, Weights>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Weights> eldest) {
+			return size() > CACHED_WEIGHTS;
+		}
+	};
+
+	private Resampler() {
+	}
+
+	//MARK: Nearest neighbor
+	// the source index of every output index, the positions of ImageProcessor.nearestNeighbor
+	static int[] nearestIndices(int inSize, int outSize) {
+		double ratio = inSize / (double)(outSize + 1);
+		int[] indices = new int[outSize];
+		for (int i = 0; i < outSize; i++)
+			indices[i] = Math.min((int) Math.round(i * ratio), inSize - 1);
+		return indices;
+	}
+
+	// the colors are taken without their alpha. a source row is read once for the output rows
+	// that repeat it, which are copies of the same row
+	static BufferedImage nearestNeighbor(BufferedImage image, int outWidth, int outHeight,
+			int grain, ForkJoinPool pool) {
+		int[] columns = nearestIndices(image.getWidth(), outWidth);
+		int[] rows = nearestIndices(image.getHeight(), outHeight);
+		BufferedImage ans = new BufferedImage(outWidth, outHeight, ImageOperations.outputType(image));
+		ImagePixels in = ImagePixels.of(image);
+		ImagePixels out = ImagePixels.of(ans);
+
+		FunctioalForEachLoops.parallelForEachBand(outWidth, outHeight, grain, pool, (fromY, toY) -> {
+			int[] source = new int[image.getWidth()];
+			int[] row = new int[outWidth];
+			for (int y = fromY; y < toY; y++) {
+				if (y == fromY || rows[y] != rows[y - 1]) {
+					in.readRow(rows[y], source, 0);
+					gather(source, columns, row);
+				}
+				out.writeRow(y, row, 0);
+			}
+		});
+		return ans;
+	}
+
+	static void gather(int[] source, int[] columns, int[] row) {
+		for (int x = 0; x < columns.length; x++)
+			row[x] = 0xFF000000 | source[columns[x]];
+	}
+
+	//MARK: Filters
+	// the source pixels and their weights of every output index of one axis
+	static final class Weights {
+		final int inSize;
+		final int outSize;
+		final int taps;
+		// the taps of output index i are at [i * taps, (i + 1) * taps)
+		final int[] indices;
+		final int[] weights;
+
+		private Weights(int inSize, int outSize, int taps, int[] indices, int[] weights) {
+			this.inSize = inSize;
+			this.outSize = outSize;
+			this.taps = taps;
+			this.indices = indices;
+			this.weights = weights;
+		}
+	}
+
+	// the weights of the axis from the cache, they are made once for every kernel and sizes
+	static Weights weights(ResamplingKernel kernel, int inSize, int outSize) {
+		String key = kernel + ":" + inSize + ":" + outSize;
+		Weights weights;
+		synchronized (cache) {
+			weights = cache.get(key);
+		}
+		if (weights == null) {
+			weights = makeWeights(kernel, inSize, outSize);
+			synchronized (cache) {
+				cache.put(key, weights);
+			}
+		}
+		return weights;
+	}
+
+	// the sample of output index i is at (i + 0.5) * inSize / outSize - 0.5, and the source
+	// indices out of the image are clamped to its edge
+	private static Weights makeWeights(ResamplingKernel kernel, int inSize, int outSize) {
+		double scale = inSize / (double) outSize;
+		double stretch = kernel.widens ? Math.max(scale, 1.0) : 1.0;
+		double support = kernel.support * stretch;
+		int taps = (int) Math.ceil(2 * support);
+		int[] indices = new int[outSize * taps];
+		int[] weights = new int[outSize * taps];
+		double[] exact = new double[taps];
+
+		for (int i = 0; i < outSize; i++) {
+			double center = (i + 0.5) * scale - 0.5;
+			int first = (int) Math.floor(center - support) + 1;
+			double sum = 0;
+			for (int k = 0; k < taps; k++) {
+				exact[k] = kernel.weight((first + k - center) / stretch);
+				sum += exact[k];
+			}
+
+			// rounded to fixed point, the rounding error goes to the largest weight
+			int total = 0, largest = 0;
+			for (int k = 0; k < taps; k++) {
+				int w = (int) Math.round(exact[k] / sum * ONE);
+				weights[i * taps + k] = w;
+				indices[i * taps + k] = Math.max(0, Math.min(first + k, inSize - 1));
+				total += w;
+				if (Math.abs(w) > Math.abs(weights[i * taps + largest]))
+					largest = k;
+			}
+			weights[i * taps + largest] += ONE - total;
+		}
+		return new Weights(inSize, outSize, taps, indices, weights);
+	}
+
+	// every output row sums the source rows of its taps, resampled to the output width. the
+	// taps move down the source with the output rows, so a band keeps only the last resampled
+	// rows, one more than the taps. all the taps are resampled, also those of zero weights, so
+	// the rows are resampled in order and the oldest one is never a tap. the answer is TYPE_INT_RGB
+	static BufferedImage resample(BufferedImage image, int outWidth, int outHeight,
+			ResamplingKernel kernel, int grain, ForkJoinPool pool) {
+		Weights horizontal = weights(kernel, image.getWidth(), outWidth);
+		Weights vertical = weights(kernel, image.getHeight(), outHeight);
+		BufferedImage ans = new BufferedImage(outWidth, outHeight, BufferedImage.TYPE_INT_RGB);
+		ImagePixels in = ImagePixels.of(image);
+		ImagePixels out = ImagePixels.of(ans);
+
+		FunctioalForEachLoops.parallelForEachBand(outWidth, outHeight, grain, pool, (fromY, toY) -> {
+			int[] source = new int[image.getWidth()];
+			int[][] window = new int[vertical.taps + 1][3 * outWidth];
+			int[] keys = new int[window.length];
+			Arrays.fill(keys, -1);
+			int next = 0;
+			int[][] taps = new int[vertical.taps][];
+			int[] sum = new int[3 * outWidth];
+			int[] row = new int[outWidth];
+
+			for (int y = fromY; y < toY; y++) {
+				for (int k = 0, t = y * vertical.taps; k < vertical.taps; k++, t++) {
+					int sy = vertical.indices[t];
+					taps[k] = null;
+					for (int w = 0; w < window.length; w++) {
+						if (keys[w] == sy)
+							taps[k] = window[w];
+					}
+					if (taps[k] == null) {
+						in.readRow(sy, source, 0);
+						horizontalRow(source, horizontal, window[next]);
+						keys[next] = sy;
+						taps[k] = window[next];
+						next = (next + 1) % window.length;
+					}
+				}
+				verticalRow(taps, vertical.weights, y * vertical.taps, sum, row);
+				out.writeRow(y, row, 0);
+			}
+		});
+		return ans;
+	}
+
+	// the channels of the argb row resampled to 3 * outSize fixed point values, red, green, blue
+	static void horizontalRow(int[] argb, Weights horizontal, int[] row) {
+		int taps = horizontal.taps;
+		int[] indices = horizontal.indices;
+		int[] weights = horizontal.weights;
+		int half = 1 << (13 - FRACTION_BITS);
+
+		for (int x = 0, t = 0; x < horizontal.outSize; x++) {
+			int red = 0, green = 0, blue = 0;
+			for (int k = 0; k < taps; k++, t++) {
+				int c = argb[indices[t]];
+				int w = weights[t];
+				red += w * ((c >> 16) & 0xFF);
+				green += w * ((c >> 8) & 0xFF);
+				blue += w * (c & 0xFF);
+			}
+			row[3 * x] = (red + half) >> (14 - FRACTION_BITS);
+			row[3 * x + 1] = (green + half) >> (14 - FRACTION_BITS);
+			row[3 * x + 2] = (blue + half) >> (14 - FRACTION_BITS);
+		}
+	}
+
+	// the rows of the taps weighted by weights[offset ..] into argb, sum is scratch of their length
+	static void verticalRow(int[][] taps, int[] weights, int offset, int[] sum, int[] argb) {
+		int length = sum.length;
+		Arrays.fill(sum, 0);
+		for (int k = 0; k < taps.length; k++) {
+			int w = weights[offset + k];
+			int[] tap = taps[k];
+			if (w == 0)
+				continue;
+			for (int x = 0; x < length; x++)
+				sum[x] += w * tap[x];
+		}
+
+		int half = 1 << (VERTICAL_SHIFT - 1);
+		for (int x = 0; x < argb.length; x++) {
+			argb[x] = ImageOperations.toRGB((sum[3 * x] + half) >> VERTICAL_SHIFT,
+					(sum[3 * x + 1] + half) >> VERTICAL_SHIFT,
+					(sum[3 * x + 2] + half) >> VERTICAL_SHIFT);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package edu.cg;
+
+// the filters Resampler resamples images with. the weight of a source pixel is the kernel at its
+// distance from the sample position, in source pixels, and is zero from the support on. the
+// kernels that widen are stretched by the scale on downscales, so every source pixel is used.
+public enum ResamplingKernel {
+	// the two nearest pixels of every axis, weighted by their distance
+	BILINEAR(1.0, false) {
+		@Override
+		public double weight(double x) {
+			x = Math.abs(x);
+			return x < 1.0 ? 1.0 - x : 0.0;
+		}
+	},
+
+	// the cubic convolution of Keys, with a = -0.5
+	BICUBIC(2.0, true) {
+		@Override
+		public double weight(double x) {
+			x = Math.abs(x);
+			if (x < 1.0)
+				return (1.5 * x - 2.5) * x * x + 1.0;
+			if (x < 2.0)
+				return ((-0.5 * x + 2.5) * x - 4.0) * x + 2.0;
+			return 0.0;
+		}
+	},
+
+	// sinc windowed by a sinc three times wider
+	LANCZOS3(3.0, true) {
+		@Override
+		public double weight(double x) {
+			x = Math.abs(x);
+			if (x < 1e-9)
+				return 1.0;
+			if (x >= 3.0)
+				return 0.0;
+			double px = Math.PI * x;
+			return 3.0 * Math.sin(px) * Math.sin(px / 3.0) / (px * px);
+		}
+	};
+
+	public final double support;
+	public final boolean widens;
+
+	ResamplingKernel(double support, boolean widens) {
+		this.support = support;
+		this.widens = widens;
+	}
+
+	public abstract double weight(double x);
+}
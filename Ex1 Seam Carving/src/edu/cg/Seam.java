@@ -12,11 +12,20 @@ public class Seam {
         tailPosition = length - 1;
     }
 
+    // allows filling the same seam again from the tail
+    public void reset(){
+        tailPosition = pixels.length - 1;
+    }
+
     public void addPixelToTail(int j){
         pixels[tailPosition] = j;
         tailPosition --;
     }
 
+    public void setPixCol(int i, int j){
+        pixels[i] = j;
+    }
+
     public void shiftSeam(int i, int shift){
         seamShifts[i] = shift;
     }
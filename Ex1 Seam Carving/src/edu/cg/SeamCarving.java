@@ -0,0 +1,89 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+// seam carving to any width and height, and showing the seams, as the menu does it. the
+// horizontal seams are found as the vertical seams of the image rotated clockwise. the images
+// are only read, and the seams of the carves are taken from plans when it is not null. the
+// carvers split their rows between the threads of pool.
+public final class SeamCarving {
+
+	private SeamCarving() {
+	}
+
+	public static BufferedImage resize(Logger logger, BufferedImage image, int outWidth, int outHeight,
+			RGBWeights rgbWeights, SeamPlanCache plans, ForkJoinPool pool) {
+		BufferedImage img;
+		if (outHeight == image.getHeight()) {
+			// the same seams as showSeamsVertical
+			img = carver(logger, image, outWidth, rgbWeights, plans, pool).resize();
+		} else if (outWidth == image.getWidth()) {
+			// the same seams as showSeamsHorizontal
+			img = carver(logger, rotateClockwise(image), outHeight, rgbWeights, plans, pool).resize();
+			img = rotateCounterclockwise(img);
+		} else if (outWidth <= image.getWidth() && outHeight <= image.getHeight()) {
+			// both seam types are removed from the same buffer, no rotation needed
+			SeamsCarver2D carver = new SeamsCarver2D(logger, image, outWidth, outHeight, rgbWeights);
+			carver.setForEachPool(pool);
+			img = carver.resize();
+		} else {
+			img = carver(logger, image, outWidth, rgbWeights, plans, pool).resize();
+			img = carver(logger, rotateClockwise(img), outHeight, rgbWeights, plans, pool).resize();
+			img = rotateCounterclockwise(img);
+		}
+		return img;
+	}
+
+	public static BufferedImage showSeamsVertical(Logger logger, BufferedImage image, int outWidth,
+			RGBWeights rgbWeights, SeamPlanCache plans, ForkJoinPool pool, int seamColorRGB) {
+		return carver(logger, image, outWidth, rgbWeights, plans, pool).showSeams(seamColorRGB);
+	}
+
+	public static BufferedImage showSeamsHorizontal(Logger logger, BufferedImage image, int outHeight,
+			RGBWeights rgbWeights, SeamPlanCache plans, ForkJoinPool pool, int seamColorRGB) {
+		BufferedImage horizontal = carver(logger, rotateClockwise(image), outHeight, rgbWeights, plans, pool)
+				.showSeams(seamColorRGB);
+		return rotateCounterclockwise(horizontal);
+	}
+
+	// a carver with the cached seams of the image, if they were found before.
+	// enlargements beyond 1.5 times are inserted in rounds
+	private static SeamsCarver carver(Logger logger, BufferedImage image, int outWidth,
+			RGBWeights rgbWeights, SeamPlanCache plans, ForkJoinPool pool) {
+		SeamsCarver carver = new SeamsCarver(logger, image, outWidth, rgbWeights, true);
+		carver.setForEachPool(pool);
+		if (plans != null)
+			plans.apply(carver);
+		return carver;
+	}
+
+	//MARK: Rotations
+	public static BufferedImage rotateClockwise(BufferedImage img) {
+		int imgWidth =  img.getWidth();
+		int imgHeight = img.getHeight();
+		BufferedImage ans = new BufferedImage(imgHeight, imgWidth, img.getType());
+		for(int y = 0; y < imgWidth; ++y)
+			for(int x = 0; x < imgHeight; ++x) {
+				int imgX = y;
+				int imgY = imgHeight-1-x;
+				ans.setRGB(x, y, img.getRGB(imgX, imgY));
+			}
+
+		return ans;
+	}
+
+	public static BufferedImage rotateCounterclockwise(BufferedImage img) {
+		int imgWidth =  img.getWidth();
+		int imgHeight = img.getHeight();
+		BufferedImage ans = new BufferedImage(imgHeight, imgWidth, img.getType());
+		for(int y = 0; y < imgWidth; ++y)
+			for(int x = 0; x < imgHeight; ++x) {
+				int imgX = imgWidth-1-y;
+				int imgY = x;
+				ans.setRGB(x, y, img.getRGB(imgX, imgY));
+			}
+
+		return ans;
+	}
+}
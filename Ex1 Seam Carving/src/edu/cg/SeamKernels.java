@@ -0,0 +1,235 @@
+package edu.cg;
+
+// row kernels of the seam carving energy and cost calculations.
+// the kernels read a gray plane that is converted once from the packed RGB image.
+// the border columns are calculated separately, so the inner loops have no
+// branches besides the direction choice and use integer math only.
+final class SeamKernels {
+
+	// the direction codes of the packed tracking rows, 2 bits per column and 16 columns per int.
+	// UP is also the code of the first row, where the seams start.
+	static final int UP = 0;
+	static final int LEFT = 1;
+	static final int RIGHT = 2;
+	static final int COLUMNS_PER_WORD = 16;
+
+	// the highest energy plus forward energy term of a single pixel, 255 + 2 * 255
+	static final int MAX_PIXEL_COST = 765;
+
+	private SeamKernels() {
+	}
+
+	// helper function to calculate gray value
+	static int toGray(int rgb) {
+		int r = (rgb >> 16) & 0xFF;
+		int g = (rgb >> 8) & 0xFF;
+		int b = (rgb & 0xFF);
+
+		return (r + g + b) / 3;
+	}
+
+	// converts columns [from, to) of the row starting at offset row to gray
+	static void grayRow(int[] image, short[] gray, int row, int from, int to) {
+		for (int pos = row + from, end = row + to; pos < end; pos++) {
+			gray[pos] = (short) toGray(image[pos]);
+		}
+	}
+
+	// the magnitude of the gradient between a pixel, its next column and its next row
+	static int energy(int gray, int nextColGray, int nextRowGray) {
+		int dj = gray - nextColGray;
+		int di = gray - nextRowGray;
+		return (int) Math.sqrt((di * di + dj * dj) * 0.5);
+	}
+
+	// calculates the energy of columns [from, to) of the row starting at offset row.
+	// nextRow is the offset of the row compared with it (the previous one for the last row)
+	static void energyRow(short[] gray, short[] energy, int row, int nextRow,
+						  int from, int to, int width) {
+		int last = Math.min(to, width - 1);
+
+		for (int j = from; j < last; j++) {
+			energy[row + j] = (short) energy(gray[row + j], gray[row + j + 1], gray[nextRow + j]);
+		}
+
+		// the last column is compared with the column before it
+		if (to == width) {
+			int j = width - 1;
+			energy[row + j] = (short) energy(gray[row + j], gray[row + j - 1], gray[nextRow + j]);
+		}
+	}
+
+	// calculates columns [from, to) of the forward energy terms of the row starting at offset
+	// row, whose previous row starts at prevRow. cu is the cost of the new edge between the
+	// left and right neighbors when a pixel is removed, and cl / cr add the new edge with the
+	// pixel above when the seam comes from the left / right. a border pixel has a single
+	// neighbor in its row, so cu is its gray and the missing side is never used.
+	static void forwardTermsRow(short[] gray, short[] cu, short[] cl, short[] cr,
+								int row, int prevRow, int from, int to, int width) {
+		int last = width - 1;
+		int pos, grayLeft, grayRight, grayUp;
+
+		if (from == 0) {
+			grayRight = gray[row + 1];
+			cu[row] = (short) grayRight;
+			cr[row] = (short) (grayRight + Math.abs(gray[prevRow] - grayRight));
+		}
+
+		for (int j = Math.max(from, 1), end = Math.min(to, last); j < end; j++) {
+			pos = row + j;
+			grayLeft = gray[pos - 1];
+			grayRight = gray[pos + 1];
+			grayUp = gray[prevRow + j];
+			cu[pos] = (short) Math.abs(grayRight - grayLeft);
+			cl[pos] = (short) (cu[pos] + Math.abs(grayUp - grayLeft));
+			cr[pos] = (short) (cu[pos] + Math.abs(grayUp - grayRight));
+		}
+
+		if (to == width) {
+			pos = row + last;
+			grayLeft = gray[pos - 1];
+			cu[pos] = (short) grayLeft;
+			cl[pos] = (short) (grayLeft + Math.abs(gray[prevRow + last] - grayLeft));
+		}
+	}
+
+	// the first row of the cost matrix is its energy
+	static void firstCostRow(short[] energy, long[] cost, char[] tracking, int row, int step,
+							 int from, int to) {
+		for (int j = from, pos = row + from * step; j < to; j++, pos += step) {
+			cost[pos] = energy[pos];
+			tracking[pos] = 's';
+		}
+	}
+
+	// calculates columns [from, to) of the cost matrix row starting at offset row, from
+	// the row above it at offset prevRow. ties prefer 'r', then 'u', then 'l'.
+	// step is the distance between two columns of a row, 1 for the rows of the image
+	// and the image stride when the "rows" are its columns (for horizontal seams).
+	static void costRow(short[] gray, short[] energy, long[] cost, char[] tracking,
+						int row, int prevRow, int step, int from, int to, int width) {
+		int last = width - 1;
+		int pos, prevPos, grayLeft, grayRight, grayUp;
+		long cu, up, left, right, min;
+
+		// first column, nothing on the left
+		if (from == 0) {
+			grayRight = gray[row + step];
+			grayUp = gray[prevRow];
+			cu = grayRight;
+			up = cost[prevRow] + cu;
+			right = cost[prevRow + step] + cu + Math.abs(grayUp - grayRight);
+			min = Math.min(up, right);
+			cost[row] = energy[row] + min;
+			tracking[row] = (min == right) ? 'r' : 'u';
+		}
+
+		for (int j = Math.max(from, 1), end = Math.min(to, last); j < end; j++) {
+			pos = row + j * step;
+			prevPos = prevRow + j * step;
+			grayLeft = gray[pos - step];
+			grayRight = gray[pos + step];
+			grayUp = gray[prevPos];
+
+			cu = Math.abs(grayRight - grayLeft);
+			up = cost[prevPos] + cu;
+			right = cost[prevPos + step] + cu + Math.abs(grayUp - grayRight);
+			left = cost[prevPos - step] + cu + Math.abs(grayUp - grayLeft);
+			min = Math.min(left, Math.min(up, right));
+			cost[pos] = energy[pos] + min;
+			tracking[pos] = (min == right) ? 'r' : (min == up) ? 'u' : 'l';
+		}
+
+		// last column, nothing on the right
+		if (to == width) {
+			pos = row + last * step;
+			prevPos = prevRow + last * step;
+			grayLeft = gray[pos - step];
+			grayUp = gray[prevPos];
+			cu = grayLeft;
+			up = cost[prevPos] + cu;
+			left = cost[prevPos - step] + cu + Math.abs(grayUp - grayLeft);
+			min = Math.min(left, up);
+			cost[pos] = energy[pos] + min;
+			tracking[pos] = (min == up) ? 'u' : 'l';
+		}
+	}
+
+	// the same as costRow for the rows of the image, reading the forward energy terms
+	// precalculated by forwardTermsRow instead of the gray levels. the costs are ints, the
+	// callers make sure a column of MAX_PIXEL_COST pixels can not overflow them.
+	// the directions are packed into the tracking row starting at word trackingRow.
+	static void forwardCostRow(short[] cu, short[] cl, short[] cr, short[] energy, int[] cost,
+							   int[] tracking, int trackingRow, int row, int prevRow,
+							   int from, int to, int width) {
+		int last = width - 1;
+		int pos, prevPos, up, left, right, min;
+
+		if (from == 0) {
+			up = cost[prevRow] + cu[row];
+			right = cost[prevRow + 1] + cr[row];
+			min = Math.min(up, right);
+			cost[row] = energy[row] + min;
+			setDirection(tracking, trackingRow, 0, (min == right) ? RIGHT : UP);
+		}
+
+		for (int j = Math.max(from, 1), end = Math.min(to, last); j < end; j++) {
+			pos = row + j;
+			prevPos = prevRow + j;
+			up = cost[prevPos] + cu[pos];
+			right = cost[prevPos + 1] + cr[pos];
+			left = cost[prevPos - 1] + cl[pos];
+			min = Math.min(left, Math.min(up, right));
+			cost[pos] = energy[pos] + min;
+			setDirection(tracking, trackingRow, j, (min == right) ? RIGHT : (min == up) ? UP : LEFT);
+		}
+
+		if (to == width) {
+			pos = row + last;
+			prevPos = prevRow + last;
+			up = cost[prevPos] + cu[pos];
+			left = cost[prevPos - 1] + cl[pos];
+			min = Math.min(left, up);
+			cost[pos] = energy[pos] + min;
+			setDirection(tracking, trackingRow, last, (min == up) ? UP : LEFT);
+		}
+	}
+
+	// the first row of the packed cost matrix is its energy
+	static void firstForwardCostRow(short[] energy, int[] cost, int[] tracking, int from, int to) {
+		for (int j = from; j < to; j++) {
+			cost[j] = energy[j];
+			setDirection(tracking, 0, j, UP);
+		}
+	}
+
+	//MARK: Packed directions
+	// the number of ints of a packed tracking row of the given width
+	static int trackingWords(int width) {
+		return (width + COLUMNS_PER_WORD - 1) / COLUMNS_PER_WORD;
+	}
+
+	static int direction(int[] tracking, int trackingRow, int j) {
+		return (tracking[trackingRow + (j >> 4)] >>> ((j & 15) << 1)) & 3;
+	}
+
+	static void setDirection(int[] tracking, int trackingRow, int j, int code) {
+		int word = trackingRow + (j >> 4);
+		int shift = (j & 15) << 1;
+		tracking[word] = (tracking[word] & ~(3 << shift)) | (code << shift);
+	}
+
+	// removes column col of a packed tracking row of the given width,
+	// shifting the codes of the columns after it one column to the left
+	static void removeDirection(int[] tracking, int trackingRow, int col, int width) {
+		int word = trackingRow + (col >> 4);
+		int lastWord = trackingRow + ((width - 1) >> 4);
+		int keep = (1 << ((col & 15) << 1)) - 1;
+
+		tracking[word] = (tracking[word] & keep) | ((tracking[word] >>> 2) & ~keep);
+		for (; word < lastWord; word++) {
+			tracking[word] |= tracking[word + 1] << 30;
+			tracking[word + 1] >>>= 2;
+		}
+	}
+}
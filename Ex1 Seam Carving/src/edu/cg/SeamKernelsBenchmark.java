@@ -0,0 +1,185 @@
+package edu.cg;
+
+import java.util.Random;
+
+// compares the row kernels of SeamKernels with the scalar per pixel code they replaced.
+// the kernels get the gray plane and the forward energy terms calculated once, as in SeamsCarver.
+// usage: SeamKernelsBenchmark [width] [height] [rounds]
+public class SeamKernelsBenchmark {
+	private final int width;
+	private final int height;
+	private final int[] image;
+	private final short[] gray;
+	private final short[] cu;
+	private final short[] cl;
+	private final short[] cr;
+	private final short[] energy;
+	private final int[] cost;
+	// the scalar code keeps a direction char per pixel, the kernels pack them 2 bits per pixel
+	private final char[] tracking;
+	private final int[] packedTracking;
+	private final int trackingStride;
+
+	public SeamKernelsBenchmark(int width, int height, long seed) {
+		this.width = width;
+		this.height = height;
+		image = new int[width * height];
+		gray = new short[width * height];
+		cu = new short[width * height];
+		cl = new short[width * height];
+		cr = new short[width * height];
+		energy = new short[width * height];
+		cost = new int[width * height];
+		tracking = new char[width * height];
+		trackingStride = SeamKernels.trackingWords(width);
+		packedTracking = new int[height * trackingStride];
+
+		Random random = new Random(seed);
+		for (int i = 0; i < image.length; i++)
+			image[i] = random.nextInt(1 << 24);
+
+		SeamKernels.grayRow(image, gray, 0, 0, image.length);
+		for (int i = 1; i < height; i++)
+			SeamKernels.forwardTermsRow(gray, cu, cl, cr, i * width, (i - 1) * width, 0, width, width);
+	}
+
+	//MARK: Kernels
+	private void kernelEnergy() {
+		for (int i = 0; i < height; i++) {
+			int nextRow = (i == height - 1) ? i - 1 : i + 1;
+			SeamKernels.energyRow(gray, energy, i * width, nextRow * width, 0, width, width);
+		}
+	}
+
+	private void kernelCost() {
+		SeamKernels.firstForwardCostRow(energy, cost, packedTracking, 0, width);
+		for (int i = 1; i < height; i++)
+			SeamKernels.forwardCostRow(cu, cl, cr, energy, cost, packedTracking, i * trackingStride,
+					i * width, (i - 1) * width, 0, width, width);
+	}
+
+	//MARK: The scalar code before SeamKernels
+	private void scalarEnergy() {
+		int nextCol, nextRow, currPix, nextColPix, nextRowPix;
+		double di, dj;
+
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				nextCol = (j == width - 1) ? j - 1 : j + 1;
+				nextRow = (i == height - 1) ? i - 1 : i + 1;
+
+				currPix = SeamKernels.toGray(image[i * width + j]);
+				nextColPix = SeamKernels.toGray(image[i * width + nextCol]);
+				nextRowPix = SeamKernels.toGray(image[nextRow * width + j]);
+
+				dj = Math.pow(currPix - nextColPix, 2);
+				di = Math.pow(currPix - nextRowPix, 2);
+				energy[i * width + j] = (short) Math.sqrt((di + dj) / 2);
+			}
+		}
+	}
+
+	private void scalarCost() {
+		long min, left, right, up;
+
+		for (int i = 0; i < height; i++) {
+			for (int j = 0; j < width; j++) {
+				int pos = i * width + j;
+				if (i == 0) {
+					cost[pos] = energy[pos];
+					tracking[pos] = 's';
+				} else {
+					up = cost[pos - width] + forwardLookingCost(i, j, 'u');
+					right = (j < width - 1) ? cost[pos - width + 1] + forwardLookingCost(i, j, 'r') : Long.MAX_VALUE;
+					left = (j > 0) ? cost[pos - width - 1] + forwardLookingCost(i, j, 'l') : Long.MAX_VALUE;
+					min = Math.min(left, Math.min(up, right));
+					cost[pos] = (int) (energy[pos] + min);
+
+					if (min == right) {
+						tracking[pos] = 'r';
+					} else if (min == up) {
+						tracking[pos] = 'u';
+					} else {
+						tracking[pos] = 'l';
+					}
+				}
+			}
+		}
+	}
+
+	private long forwardLookingCost(int i, int j, char dir) {
+		long res;
+		int pos = i * width + j;
+
+		if (j == width - 1) {
+			res = SeamKernels.toGray(image[pos - 1]);
+		} else if (j == 0) {
+			res = SeamKernels.toGray(image[pos + 1]);
+		} else {
+			res = Math.abs(SeamKernels.toGray(image[pos + 1]) - SeamKernels.toGray(image[pos - 1]));
+		}
+
+		switch (dir) {
+			case 'l':
+				res += Math.abs(SeamKernels.toGray(image[pos - width]) - SeamKernels.toGray(image[pos - 1]));
+				break;
+			case 'r':
+				res += Math.abs(SeamKernels.toGray(image[pos - width]) - SeamKernels.toGray(image[pos + 1]));
+				break;
+			default:
+				break;
+		}
+		return res;
+	}
+
+	//MARK: Measuring
+	private static double nanosPerRow(Runnable pass, int rows, int rounds) {
+		long best = Long.MAX_VALUE;
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			pass.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / (double) rows;
+	}
+
+	private long checksum(boolean packed) {
+		long sum = 0;
+		int direction;
+		for (int i = 0; i < cost.length; i++) {
+			if (packed) {
+				direction = SeamKernels.direction(packedTracking, (i / width) * trackingStride, i % width);
+			} else {
+				direction = (tracking[i] == 'l') ? SeamKernels.LEFT : (tracking[i] == 'r') ? SeamKernels.RIGHT : SeamKernels.UP;
+			}
+			sum = 31 * sum + cost[i] * 7L + energy[i] + direction;
+		}
+		return sum;
+	}
+
+	public static void main(String[] args) {
+		int width = args.length > 0 ? Integer.parseInt(args[0]) : 3840;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 540;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+		SeamKernelsBenchmark bench = new SeamKernelsBenchmark(width, height, 1);
+
+		bench.scalarEnergy();
+		bench.scalarCost();
+		long expected = bench.checksum(false);
+		bench.kernelEnergy();
+		bench.kernelCost();
+		if (bench.checksum(true) != expected)
+			throw new IllegalStateException("The kernels do not match the scalar code");
+
+		double scalarEnergy = nanosPerRow(bench::scalarEnergy, height, rounds);
+		double kernelEnergy = nanosPerRow(bench::kernelEnergy, height, rounds);
+		double scalarCost = nanosPerRow(bench::scalarCost, height, rounds);
+		double kernelCost = nanosPerRow(bench::kernelCost, height, rounds);
+
+		System.out.println("Image: " + width + "x" + height + ", best of " + rounds + " rounds");
+		System.out.printf("energy: scalar %.0f ns/row, kernel %.0f ns/row, speedup %.2fx%n",
+				scalarEnergy, kernelEnergy, scalarEnergy / kernelEnergy);
+		System.out.printf("cost:   scalar %.0f ns/row, kernel %.0f ns/row, speedup %.2fx%n",
+				scalarCost, kernelCost, scalarCost / kernelCost);
+	}
+}
@@ -0,0 +1,128 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+// records the order in which the pixels of an image are removed by seam carving,
+// so the image can be retargeted to any width in [minWidth, maxWidth] in a single pass.
+public class SeamMap implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public final int width;
+	public final int height;
+	public final int maxSeams;
+
+	// the index of the seam that removed each pixel, maxSeams for pixels that were never removed
+	private final int[] removalOrder;
+
+	SeamMap(int width, int height, int maxSeams, int[] removalOrder) {
+		this.width = width;
+		this.height = height;
+		this.maxSeams = maxSeams;
+		this.removalOrder = removalOrder;
+	}
+
+	// carves the image down to the minimal width SeamsCarver allows and records every seam
+	public static SeamMap compute(Logger logger, BufferedImage image, RGBWeights rgbWeights) {
+		int width = image.getWidth();
+		return new SeamsCarver(logger, image, width - width / 2, rgbWeights).seamMap();
+	}
+
+	public int minWidth() {
+		return width - maxSeams;
+	}
+
+	public int maxWidth() {
+		return width + maxSeams;
+	}
+
+	// the same image SeamsCarver.resize() returns for outWidth
+	public BufferedImage retarget(BufferedImage source, int outWidth) {
+		checkSource(source);
+		if (outWidth < minWidth() | outWidth > maxWidth())
+			throw new IllegalArgumentException("Width must be between " + minWidth() + " and " + maxWidth());
+
+		int numOfSeams = Math.abs(outWidth - width);
+		BufferedImage outImage = new BufferedImage(outWidth, height, source.getType());
+		int[] inRow = new int[width];
+		int[] outRow = new int[outWidth];
+		int row, shift, col;
+
+		for (int i = 0; i < height; i++) {
+			source.getRGB(0, i, width, 1, inRow, 0, width);
+			row = i * width;
+
+			if (outWidth <= width) {
+				// keep the pixels that were not removed by the first seams
+				col = 0;
+				for (int j = 0; j < width; j++) {
+					if (removalOrder[row + j] >= numOfSeams) {
+						outRow[col++] = inRow[j];
+					}
+				}
+			} else {
+				// duplicate the pixels of the first seams
+				shift = 0;
+				for (int j = 0; j < outWidth; j++) {
+					outRow[j] = inRow[j - shift];
+					if (j < width && removalOrder[row + j] < numOfSeams) {
+						shift++;
+					}
+				}
+			}
+			outImage.setRGB(0, i, outWidth, 1, outRow, 0, outWidth);
+		}
+		return outImage;
+	}
+
+	// the same image SeamsCarver.showSeams returns for numOfSeams seams
+	public BufferedImage showSeams(BufferedImage source, int numOfSeams, int seamColorRGB) {
+		checkSource(source);
+		if (numOfSeams < 0 | numOfSeams > maxSeams)
+			throw new IllegalArgumentException("Number of seams must be between 0 and " + maxSeams);
+
+		BufferedImage outImage = new BufferedImage(width, height, source.getType());
+		int[] rowPixels = new int[width];
+
+		for (int i = 0; i < height; i++) {
+			source.getRGB(0, i, width, 1, rowPixels, 0, width);
+			for (int j = 0; j < width; j++) {
+				if (removalOrder[i * width + j] < numOfSeams) {
+					rowPixels[j] = seamColorRGB;
+				}
+			}
+			outImage.setRGB(0, i, width, 1, rowPixels, 0, width);
+		}
+		return outImage;
+	}
+
+	private void checkSource(BufferedImage source) {
+		if (source.getWidth() != width | source.getHeight() != height)
+			throw new IllegalArgumentException("The seam map was computed for a " + width + "x" + height + " image");
+	}
+
+	//MARK: Serialization
+	public void save(File file) throws IOException {
+		try (ObjectOutputStream out = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeObject(this);
+		}
+	}
+
+	public static SeamMap load(File file) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(
+				new BufferedInputStream(new FileInputStream(file)))) {
+			return (SeamMap) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Not a seam map: " + file.getName(), e);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package edu.cg;
+
+// the seams SeamsCarver found for an image, as the absolute columns of the seam pixels
+// of every row. a plan computed once can show the seams and resize the image to both
+// width - numOfSeams and width + numOfSeams, see SeamsCarver.setSeamPlan and SeamPlanCache.
+public class SeamPlan {
+	public final int width;
+	public final int height;
+	public final int numOfSeams;
+
+	// the columns of row i are columns[i * numOfSeams .. (i + 1) * numOfSeams), sorted
+	private final int[] columns;
+
+	SeamPlan(int width, int height, int numOfSeams, int[] columns) {
+		this.width = width;
+		this.height = height;
+		this.numOfSeams = numOfSeams;
+		this.columns = columns;
+	}
+
+	// the column of the k-th seam pixel from the left in row i
+	public int column(int i, int k) {
+		return columns[i * numOfSeams + k];
+	}
+
+	//MARK: Rows
+	// copies rows [fromRow, toRow) without the seam pixels, out is numOfSeams narrower than in
+	void removeRows(int[] in, int inStride, int[] out, int outStride, int fromRow, int toRow) {
+		int inRow, outRow, write, from;
+
+		for (int i = fromRow; i < toRow; i++) {
+			inRow = i * inStride;
+			outRow = i * outStride;
+			write = 0;
+			from = 0;
+			for (int k = i * numOfSeams, end = k + numOfSeams; k < end; k++) {
+				System.arraycopy(in, inRow + from, out, outRow + write, columns[k] - from);
+				write += columns[k] - from;
+				from = columns[k] + 1;
+			}
+			System.arraycopy(in, inRow + from, out, outRow + write, width - from);
+		}
+	}
+
+	// copies rows [fromRow, toRow) with the seam pixels duplicated, out is numOfSeams wider than in.
+	// a pixel is duplicated once its column in the output reaches the column of a seam pixel
+	void insertRows(int[] in, int inStride, int[] out, int outStride, int fromRow, int toRow) {
+		int inRow, outRow, shift, k, end;
+
+		for (int i = fromRow; i < toRow; i++) {
+			inRow = i * inStride;
+			outRow = i * outStride;
+			shift = 0;
+			k = i * numOfSeams;
+			end = k + numOfSeams;
+			for (int j = 0; j < width + numOfSeams; j++) {
+				out[outRow + j] = in[inRow + j - shift];
+				if (k < end && columns[k] == j) {
+					shift++;
+					k++;
+				}
+			}
+		}
+	}
+
+	// paints the seam pixels of rows [fromRow, toRow)
+	void markRows(int[] pixels, int stride, int seamColorRGB, int fromRow, int toRow) {
+		for (int i = fromRow; i < toRow; i++) {
+			for (int k = i * numOfSeams, end = k + numOfSeams; k < end; k++) {
+				pixels[i * stride + columns[k]] = seamColorRGB;
+			}
+		}
+	}
+}
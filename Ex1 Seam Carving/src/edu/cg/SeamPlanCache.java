@@ -0,0 +1,101 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// keeps the seam plans of the last carves, so showing the seams of an image and then
+// resizing it finds the seams only once. the plans are keyed by a digest of the pixels
+// of the image and by SeamsCarver.seamPlanKey(), and the least recently used one is dropped.
+public class SeamPlanCache {
+	private final int capacity;
+	private final Map<String, SeamPlan> plans;
+	private int hits;
+	private int misses;
+
+	public SeamPlanCache(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive");
+
+		this.capacity = capacity;
+		plans = new LinkedHashMap<String, SeamPlan>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, SeamPlan> eldest) {
+				return size() > SeamPlanCache.this.capacity;
+			}
+		};
+	}
+
+	// sets the cached plan of the carver, finding its seams and caching them first if needed.
+	// staged enlargements of more than half the width have no single plan and are left alone.
+	public void apply(SeamsCarver carver) {
+		if (Math.abs(carver.outWidth - carver.inWidth) > carver.inWidth / 2)
+			return;
+
+		String key = digest(carver.workingImage) + ":" + carver.seamPlanKey();
+		SeamPlan plan;
+		synchronized (this) {
+			plan = plans.get(key);
+			if (plan != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+
+		if (plan == null) {
+			plan = carver.seamPlan();
+			synchronized (this) {
+				plans.put(key, plan);
+			}
+		}
+		carver.setSeamPlan(plan);
+	}
+
+	public synchronized void clear() {
+		plans.clear();
+	}
+
+	public synchronized int hits() {
+		return hits;
+	}
+
+	public synchronized int misses() {
+		return misses;
+	}
+
+	// a SHA-256 digest of the size and the pixels of the image
+	public static String digest(BufferedImage image) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] row = new int[width];
+		ByteBuffer bytes = ByteBuffer.allocate(Math.max(width, 2) * Integer.BYTES);
+
+		bytes.putInt(width).putInt(height);
+		md.update(bytes.array(), 0, 2 * Integer.BYTES);
+		for (int i = 0; i < height; i++) {
+			image.getRGB(0, i, width, 1, row, 0, width);
+			bytes.clear();
+			bytes.asIntBuffer().put(row);
+			md.update(bytes.array(), 0, width * Integer.BYTES);
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : md.digest()) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+}
@@ -1,8 +1,9 @@
 package edu.cg;
 
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class SeamsCarver extends ImageProcessor {
 
@@ -12,31 +13,111 @@ public class SeamsCarver extends ImageProcessor {
 		BufferedImage apply();
 	}
 
+	@FunctionalInterface
+	interface RowsOperation {
+		void apply(int fromRow, int toRow);
+	}
+
+	// the row methods of SeamPlan
+	@FunctionalInterface
+	interface SeamPlanRows {
+		void apply(int[] in, int inStride, int[] out, int outStride, int fromRow, int toRow);
+	}
+
+	//MARK: Constants
+	// rows narrower than this are not worth splitting between threads
+	public static final int PARALLEL_MIN_WIDTH = 1024;
+	private static final int PARALLEL_CHUNK_WIDTH = 256;
+	private static final int PARALLEL_CHUNK_ROWS = 32;
+	// marks the cost of pixels outside the band of a pyramid seam, low enough not to overflow
+	private static final int OUTSIDE_BAND_COST = Integer.MAX_VALUE / 2;
+	// the costs are ints, so the cost of a whole column must stay below OUTSIDE_BAND_COST
+	public static final int MAX_HEIGHT = Integer.MAX_VALUE / 4 / SeamKernels.MAX_PIXEL_COST;
+	// how many bottom row minima are tried per seam of a batch
+	private static final int BATCH_ATTEMPTS_PER_SEAM = 8;
+
 	//MARK: Fields
 	private int numOfSeams;
 	private ResizeOperation resizeOp;
-	private long[][] energyMatrix;
-	private long[][] costMatrix;
-	private int[][] imageMatrix;
-	private char[][] trackingtMatrix;
+
+	// all matrices are flat row major buffers with a fixed stride of inWidth (outWidth when staged),
+	// so row i starts at i * stride and only its first currWidth entries are used.
+	// the energy fits a short and the costs an int, see MAX_HEIGHT. the directions
+	// are packed 2 bits per column, so row i of trackingtMatrix starts at i * trackingStride.
+	private int stride;
+	private int trackingStride;
+	private short[] energyMatrix;
+	private int[] costMatrix;
+	private int[] imageMatrix;
+	private int[] trackingtMatrix;
+	// the gray levels and the forward energy terms of SeamKernels.forwardTermsRow,
+	// shifted with the image and recalculated only next to the removed seams
+	private short[] grayMatrix;
+	private short[] cuMatrix;
+	private short[] clMatrix;
+	private short[] crMatrix;
+	private int[] prevCostRow;
+	private int[] columnMatrix;
 	private int currWidth;
+	private boolean incrementalCostMatrix;
+	private boolean parallelCostMatrix;
+	private boolean costMatrixCalculated;
+	private Seam removedSeam;
+	private long totalSeamsEnergy;
+
+	// coarse to fine mode, seams are found on an energy downsampled by 2^pyramidLevels
+	// and refined in a band of pyramidBand columns around them. 0 levels is the exact mode.
+	private int pyramidLevels;
+	private int pyramidBand;
+	private long[] coarseEnergy;
+	private long[] coarseCost;
+	private char[] coarseTracking;
+	private int[] coarseSeam;
+
+	// batch mode, several disjoint seams are taken from a single cost matrix
+	private int batchSize;
+	private boolean[] triedColumns;
+	private int[] batchColumns;
+
+	// staged enlargement, the seams are inserted in rounds of at most half the current width.
+	// the buffers have the stride of the output width, and roundMatrix keeps the pixels a round
+	// starts from, since finding its seams removes them from imageMatrix
+	private boolean stagedEnlargement;
+	private int[] roundMatrix;
+	private long[] roundTimes;
+
+	// the seams of the whole carve, set by setSeamPlan or computed by seamPlan()
+	private SeamPlan seamPlan;
 
 
 	//MARK: Constructor
 	public SeamsCarver(Logger logger, BufferedImage workingImage,
 					   int outWidth, RGBWeights rgbWeights) {
+		this(logger, workingImage, outWidth, rgbWeights, false);
+	}
+
+	// with stagedEnlargement set, the image can be enlarged beyond 1.5 times its width. the seams
+	// are then inserted in rounds, each of them into the image the previous round has enlarged.
+	public SeamsCarver(Logger logger, BufferedImage workingImage,
+					   int outWidth, RGBWeights rgbWeights, boolean stagedEnlargement) {
 		super(logger, workingImage, rgbWeights, outWidth, workingImage.getHeight());
 
 		numOfSeams = Math.abs(outWidth - inWidth);
+		this.stagedEnlargement = stagedEnlargement && outWidth > inWidth;
 
 		if (inWidth < 2 | inHeight < 2)
 			throw new RuntimeException("Can not apply seam carving: workingImage is too small");
 
-		if (numOfSeams > inWidth / 2)
+		if (numOfSeams > inWidth / 2 && !this.stagedEnlargement)
 			throw new RuntimeException("Can not apply seam carving: too many seams...");
 
+		if (inHeight > MAX_HEIGHT)
+			throw new RuntimeException("Can not apply seam carving: workingImage is too tall");
+
 		//Sets resizeOp with an appropriate method reference
-		if (outWidth > inWidth)
+		if (this.stagedEnlargement)
+			resizeOp = this::increaseImageWidthInRounds;
+		else if (outWidth > inWidth)
 			resizeOp = this::increaseImageWidth;
 		else if (outWidth < inWidth)
 			resizeOp = this::reduceImageWidth;
@@ -45,105 +126,411 @@ public class SeamsCarver extends ImageProcessor {
 
 		// initial calculations
 		currWidth = inWidth;
+		incrementalCostMatrix = true;
+		parallelCostMatrix = true;
+		batchSize = 1;
 		initialCalculations();
+		logger.log(String.format("Seam carving buffers: %.2f bytes per pixel", bytesPerPixel()));
 	}
 
+	// the memory of the buffers allocated for a width x height image, before any of the optional
+	// modes is set. use it to size the heap before accepting an image, see bytesPerPixel()
+	public static long estimateMemory(int width, int height) {
+		long pixels = (long) width * height;
+		// image and cost ints, and gray, energy and three forward energy terms shorts
+		return pixels * (Integer.BYTES * 2 + Short.BYTES * 5)
+				+ (long) SeamKernels.trackingWords(width) * height * Integer.BYTES
+				+ (long) width * Integer.BYTES;
+	}
+
+	// the memory of all the buffers of this carver per pixel of the working image,
+	// including the ones of the pyramid and batch modes and of seamMap() when they are used
+	public double bytesPerPixel() {
+		long bytes = estimateMemory(stride, inHeight);
+		if (roundMatrix != null)
+			bytes += (long) roundMatrix.length * Integer.BYTES;
+		if (columnMatrix != null)
+			bytes += (long) columnMatrix.length * Integer.BYTES;
+		if (coarseEnergy != null)
+			bytes += coarseEnergy.length * (Long.BYTES * 2 + Character.BYTES) + coarseSeam.length * Integer.BYTES;
+		if (triedColumns != null)
+			bytes += triedColumns.length + batchColumns.length * Integer.BYTES;
+		return bytes / ((double) inWidth * inHeight);
+	}
+
+	// allocates every buffer of the carve, nothing is allocated per seam after this
 	private void initialCalculations() {
-		energyMatrix = new long[inHeight][currWidth];
-		imageMatrix = new int[inHeight][currWidth];
+		stride = stagedEnlargement ? outWidth : inWidth;
+		imageMatrix = new int[inHeight * stride];
+		trackingStride = SeamKernels.trackingWords(stride);
+		energyMatrix = new short[inHeight * stride];
+		costMatrix = new int[inHeight * stride];
+		trackingtMatrix = new int[inHeight * trackingStride];
+		grayMatrix = new short[inHeight * stride];
+		cuMatrix = new short[inHeight * stride];
+		clMatrix = new short[inHeight * stride];
+		crMatrix = new short[inHeight * stride];
+		prevCostRow = new int[stride];
+
+		workingImage.getRGB(0, 0, inWidth, inHeight, imageMatrix, 0, stride);
+
+		// the energy is calculated once here, removeSeam keeps it up to date
+		calculateGrayAndEnergy();
+	}
 
-		calculateEnergy();
+	// when set, the cost matrix of the previous seam is reused and only the entries
+	// affected by the removed seam are recalculated. The result is the same either way.
+	public void setIncrementalCostMatrix(boolean incrementalCostMatrix) {
+		this.incrementalCostMatrix = incrementalCostMatrix;
+	}
+
+	// finds the seams on an energy pyramid of the given number of levels and refines them at
+	// full resolution, within bandWidth columns around each upsampled coarse seam.
+	// the seams are close to the exact ones, compare totalSeamsEnergy() of both modes.
+	public void setPyramidMode(int levels, int bandWidth) {
+		if (levels < 0 | bandWidth < 1)
+			throw new IllegalArgumentException("Pyramid levels must be non negative and band width positive");
+
+		pyramidLevels = levels;
+		pyramidBand = bandWidth;
+	}
+
+	// takes up to batchSize seams that neither share a pixel nor cross each other from every
+	// cost matrix, before the energy is updated. a batch size of 1 is the exact greedy carving.
+	// the batches are not used in pyramid mode, where the cost matrix is banded around one seam.
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+
+		this.batchSize = batchSize;
+		triedColumns = new boolean[stride];
+		batchColumns = new int[batchSize];
+	}
+
+	// the sum of the energy of every removed pixel, lower is better
+	public long totalSeamsEnergy() {
+		return totalSeamsEnergy;
+	}
+
+	// when set, the columns of wide rows are split between the threads of the pool of
+	// setForEachPool. every entry is calculated exactly as in the sequential loop.
+	public void setParallelCostMatrix(boolean parallelCostMatrix) {
+		this.parallelCostMatrix = parallelCostMatrix;
+	}
+
+	private void calculateCostMatrix() {
+		if (incrementalCostMatrix && removedSeam != null) {
+			updateCostMatrix(removedSeam);
+			return;
+		}
+
+		logger.log("Calculating cost matrix");
+
+		// use dynamic programming to calculate minimal seam cost,
+		// a row only depends on the previous one so its columns are independent
+		boolean parallel = parallelCostMatrix && currWidth >= PARALLEL_MIN_WIDTH
+				&& getForEachPool().getParallelism() > 1;
 		for (int i = 0; i < inHeight; i++) {
-			for (int j = 0; j < currWidth; j++) {
-				imageMatrix[i][j] = workingImage.getRGB(j, i);
+			if (parallel) {
+				getForEachPool().invoke(new CostRowTask(i, 0, currWidth));
+			} else {
+				calculateCostRow(i, 0, currWidth);
 			}
 		}
+		costMatrixCalculated = true;
 	}
 
-	private void calculateCostMatrix() {
-		costMatrix = new long[inHeight][currWidth];
-		trackingtMatrix = new char[inHeight][currWidth];
+	private void calculateCostRow(int i, int from, int to) {
+		if (i == 0) {
+			SeamKernels.firstForwardCostRow(energyMatrix, costMatrix, trackingtMatrix, from, to);
+		} else {
+			SeamKernels.forwardCostRow(cuMatrix, clMatrix, crMatrix, energyMatrix, costMatrix, trackingtMatrix,
+					i * trackingStride, i * stride, (i - 1) * stride, from, to, currWidth);
+		}
+	}
+
+	// calculates the columns [from, to) of a cost matrix row, splitting them in halves.
+	// the halves are split at a whole word of packed directions, so no two tasks write the same int
+	@SuppressWarnings("serial")
+	private class CostRowTask extends RecursiveAction {
+		private final int row, from, to;
+
+		CostRowTask(int row, int from, int to) {
+			this.row = row;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK_WIDTH) {
+				calculateCostRow(row, from, to);
+			} else {
+				int mid = ((from + to) >>> 1) & -SeamKernels.COLUMNS_PER_WORD;
+				invokeAll(new CostRowTask(row, from, mid), new CostRowTask(row, mid, to));
+			}
+		}
+	}
+
+	// applies the operation on all rows, split into chunks between the threads of the pool of
+	// setForEachPool
+	private void forEachRows(RowsOperation op) {
+		ForkJoinPool pool = getForEachPool();
+		if (pool.getParallelism() > 1) {
+			pool.invoke(new RowsTask(op, 0, inHeight));
+		} else {
+			op.apply(0, inHeight);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class RowsTask extends RecursiveAction {
+		private final RowsOperation op;
+		private final int from, to;
+
+		RowsTask(RowsOperation op, int from, int to) {
+			this.op = op;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_CHUNK_ROWS) {
+				op.apply(from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new RowsTask(op, from, mid), new RowsTask(op, mid, to));
+			}
+		}
+	}
+
+	// recalculates only the dirty part of the cost matrix after a seam was removed.
+	// the cost of (i, j) depends on its energy, its forward looking cost and on the costs
+	// of (i - 1, j - 1..j + 1), so a row is dirty next to the seam (where the neighbors of
+	// a pixel changed) and below every entry of the previous row whose cost changed.
+	// once a row is recalculated with no changes, only the seam itself stays dirty.
+	private void updateCostMatrix(Seam seam) {
+		int changedFrom = 0, changedTo = -1;
+		int from, to, seamCol, prevSeamCol, row;
+
+		logger.log("Updating cost matrix");
+
+		for (int i = 0; i < inHeight; i++) {
+			seamCol = seam.getPixCol(i);
+			prevSeamCol = (i > 0) ? seam.getPixCol(i - 1) : seamCol;
+			from = Math.min(seamCol, prevSeamCol) - 1;
+			to = Math.max(seamCol, prevSeamCol);
+
+			// spread the changes of the previous row
+			if (changedFrom <= changedTo) {
+				from = Math.min(from, changedFrom - 1);
+				to = Math.max(to, changedTo + 1);
+			}
+			from = Math.max(from, 0);
+			to = Math.min(to, currWidth - 1);
+
+			row = i * stride;
+			System.arraycopy(costMatrix, row + from, prevCostRow, from, to - from + 1);
+			calculateCostRow(i, from, to + 1);
+
+			changedFrom = currWidth;
+			changedTo = -1;
+			for (int j = from; j <= to; j++) {
+				if (costMatrix[row + j] != prevCostRow[j]) {
+					changedFrom = Math.min(changedFrom, j);
+					changedTo = j;
+				}
+			}
+		}
+	}
+
+	private Seam findSeam(Seam seam) {
+		int factor = 1 << pyramidLevels;
+
+		// there is nothing to gain from a pyramid narrower than two columns
+		if (pyramidLevels == 0 || (currWidth + factor - 1) / factor < 2) {
+			calculateCostMatrix();
+			return findMinSeam(seam, 0, currWidth);
+		}
+		return findPyramidSeam(seam);
+	}
+
+	private Seam findPyramidSeam(Seam seam) {
+		int factor = 1 << pyramidLevels;
+		int coarseWidth = (currWidth + factor - 1) / factor;
+		int coarseHeight = (inHeight + factor - 1) / factor;
+		int from = 0, to = 0, prevFrom, prevTo, col;
+
+		logger.log("Calculating coarse cost matrix");
+		calculateCoarseSeam(coarseWidth, coarseHeight);
+
+		// the exact dynamic programming, only inside the band around the coarse seam.
+		// the costs of the previous row right outside its band are marked as unreachable
+		logger.log("Refining seam");
+		for (int i = 0; i < inHeight; i++) {
+			prevFrom = from;
+			prevTo = to;
+			col = coarseSeam[i >> pyramidLevels];
+			from = Math.max(col * factor - pyramidBand, 0);
+			to = Math.min((col + 1) * factor + pyramidBand, currWidth);
+
+			if (i > 0) {
+				for (int j = Math.max(from - 1, 0); j < prevFrom; j++) {
+					costMatrix[(i - 1) * stride + j] = OUTSIDE_BAND_COST;
+				}
+				for (int j = prevTo; j <= Math.min(to, currWidth - 1); j++) {
+					costMatrix[(i - 1) * stride + j] = OUTSIDE_BAND_COST;
+				}
+			}
+			calculateCostRow(i, from, to);
+		}
+
+		// the cost matrix is only valid inside the bands, so it can not be updated incrementally
+		costMatrixCalculated = false;
+		removedSeam = null;
+		return findMinSeam(seam, from, to);
+	}
+
+	// sums the energy of factor x factor blocks and finds the minimal seam of the
+	// coarse energy, with the same tie breaking as the full resolution one
+	private void calculateCoarseSeam(int coarseWidth, int coarseHeight) {
+		int size = coarseWidth * coarseHeight;
+		int row, prevRow, col = 0;
 		long min, left, right, up;
 
-		logger.log("Calculating cost matrix");
+		if (coarseEnergy == null || coarseEnergy.length < size) {
+			coarseEnergy = new long[size];
+			coarseCost = new long[size];
+			coarseTracking = new char[size];
+			coarseSeam = new int[coarseHeight];
+		}
 
-		// use dynamic programming to calculate minimal seam cost
+		Arrays.fill(coarseEnergy, 0, size, 0);
 		for (int i = 0; i < inHeight; i++) {
+			row = (i >> pyramidLevels) * coarseWidth;
 			for (int j = 0; j < currWidth; j++) {
+				coarseEnergy[row + (j >> pyramidLevels)] += energyMatrix[i * stride + j];
+			}
+		}
 
-				// first row
-				if (i == 0) {
-					costMatrix[i][j] = energyMatrix[i][j];
-					trackingtMatrix[i][j] = 's';
-				} else {
-					up = costMatrix[i - 1][j] + forwardLookingCost(i, j, 'u');
-					right = (j < currWidth - 1) ? costMatrix[i - 1][j + 1] + forwardLookingCost(i, j, 'r') : Long.MAX_VALUE;
-					left = (j > 0) ? costMatrix[i - 1][j - 1] + forwardLookingCost(i, j, 'l') : Long.MAX_VALUE;
-					min = Math.min(left, Math.min(up, right));
-					costMatrix[i][j] = energyMatrix[i][j] + min;
-
-					if (min == right) {
-						trackingtMatrix[i][j] = 'r';
-					} else if (min == up) {
-						trackingtMatrix[i][j] = 'u';
-					} else {
-						trackingtMatrix[i][j] = 'l';
-					}
+		System.arraycopy(coarseEnergy, 0, coarseCost, 0, coarseWidth);
+		for (int i = 1; i < coarseHeight; i++) {
+			row = i * coarseWidth;
+			prevRow = row - coarseWidth;
+			for (int j = 0; j < coarseWidth; j++) {
+				up = coarseCost[prevRow + j];
+				right = (j < coarseWidth - 1) ? coarseCost[prevRow + j + 1] : Long.MAX_VALUE;
+				left = (j > 0) ? coarseCost[prevRow + j - 1] : Long.MAX_VALUE;
+				min = Math.min(left, Math.min(up, right));
+				coarseCost[row + j] = coarseEnergy[row + j] + min;
+				coarseTracking[row + j] = (min == right) ? 'r' : (min == up) ? 'u' : 'l';
+			}
+		}
+
+		row = (coarseHeight - 1) * coarseWidth;
+		min = Long.MAX_VALUE;
+		for (int j = 0; j < coarseWidth; j++) {
+			if (coarseCost[row + j] <= min) {
+				min = coarseCost[row + j];
+				col = j;
+			}
+		}
+		for (int i = coarseHeight - 1; i >= 0; i--) {
+			coarseSeam[i] = col;
+			if (i > 0) {
+				switch (coarseTracking[i * coarseWidth + col]) {
+					case 'l':
+						col--;
+						break;
+					case 'r':
+						col++;
+						break;
+					default:
+						break;
 				}
 			}
 		}
 	}
 
-	private long forwardLookingCost(int i, int j, char dir) {
-		long res;
+	// finds up to count seams from seams[offset] on, and returns how many were found.
+	// the seams of a batch are ordered by their cost, and each one holds its columns in the
+	// image left after removing the previous ones, just like seams that are found one by one.
+	private int findSeams(Seam[] seams, int offset, int count) {
+		if (count == 1 || batchSize == 1 || pyramidLevels > 0) {
+			findSeam(seams[offset]);
+			return 1;
+		}
 
-		if (j == currWidth - 1) {
-			res = toGray(imageMatrix[i][j - 1]);
-		} else if (j == 0) {
-			res = toGray(imageMatrix[i][j + 1]);
-		} else {
-			res = Math.abs(toGray(imageMatrix[i][j + 1]) - toGray(imageMatrix[i][j - 1]));
+		calculateCostMatrix();
+
+		// tries the bottom row minima from the cheapest, the last one of equal costs first
+		int lastRow = (inHeight - 1) * stride;
+		int attempts = Math.min(batchSize * BATCH_ATTEMPTS_PER_SEAM, currWidth);
+		int found = 0, col;
+		Arrays.fill(triedColumns, 0, currWidth, false);
+		for (int a = 0; a < attempts && found < count; a++) {
+			col = -1;
+			for (int j = 0; j < currWidth; j++) {
+				if (!triedColumns[j] && (col < 0 || costMatrix[lastRow + j] <= costMatrix[lastRow + col])) {
+					col = j;
+				}
+			}
+			triedColumns[col] = true;
+
+			backtrack(seams[offset + found], col);
+			if (isDisjoint(seams, offset, found)) {
+				found++;
+			}
 		}
+		logger.log("Found " + found + " seams");
+		return found;
+	}
+
+	// checks that the last seam neither shares a pixel with the previous ones nor crosses them
+	private boolean isDisjoint(Seam[] seams, int offset, int count) {
+		Seam seam = seams[offset + count];
+		boolean leftOf;
 
-		switch (dir) {
-			case 'l':
-				res += Math.abs(toGray(imageMatrix[i - 1][j]) - toGray(imageMatrix[i][j - 1]));
-				break;
-			case 'r':
-				res += Math.abs(toGray(imageMatrix[i - 1][j]) - toGray(imageMatrix[i][j + 1]));
-				break;
-			default:
-				break;
+		for (int k = offset; k < offset + count; k++) {
+			leftOf = seam.getPixCol(0) < seams[k].getPixCol(0);
+			for (int i = 0; i < inHeight; i++) {
+				if (seam.getPixCol(i) == seams[k].getPixCol(i) | seam.getPixCol(i) < seams[k].getPixCol(i) != leftOf) {
+					return false;
+				}
+			}
 		}
-		return res;
+		return true;
 	}
 
-	private Seam findMinSeam() {
-		Seam seam = new Seam(inHeight);
+	// backtracks the seam ending at the minimal cost of the columns [from, to) of the last row
+	private Seam findMinSeam(Seam seam, int from, int to) {
 		int col = 0;
-		long min = Long.MAX_VALUE;
-		for (int j = 0; j < currWidth; j++) {
-			if (costMatrix[inHeight - 1][j] <= min) {
-				min = costMatrix[inHeight - 1][j];
+		int lastRow = (inHeight - 1) * stride;
+		int min = Integer.MAX_VALUE;
+		for (int j = from; j < to; j++) {
+			if (costMatrix[lastRow + j] <= min) {
+				min = costMatrix[lastRow + j];
 				col = j;
 			}
 		}
 
 		logger.log("Found min: " + min + " at index: " + col);
 		logger.log("Backtracking");
+		return backtrack(seam, col);
+	}
 
-		// backtrack
+	private Seam backtrack(Seam seam, int col) {
+		seam.reset();
 		for (int i = inHeight - 1; i >= 0; i--) {
 			seam.addPixelToTail(col);
-			switch (trackingtMatrix[i][col]) {
-				case 'l':
+			switch (SeamKernels.direction(trackingtMatrix, i * trackingStride, col)) {
+				case SeamKernels.LEFT:
 					col = col - 1;
 					break;
-				case 'r':
+				case SeamKernels.RIGHT:
 					col = col + 1;
 					break;
-				case 's':
-					break;
 				default:
 					break;
 			}
@@ -151,179 +538,395 @@ public class SeamsCarver extends ImageProcessor {
 		return seam;
 	}
 
+	// removes the seam in place by shifting the tail of every row one column to the left
 	private void removeSeam(Seam seam) {
-		currWidth--;
-		int[][] tmpImageMatrix = new int[inHeight][currWidth];
-		int shift, shiftCol;
+		boolean shiftCosts = incrementalCostMatrix && costMatrixCalculated;
+		int shiftCol, pos, tail;
 
 		logger.log("Removing seam");
+		currWidth--;
 		for (int i = 0; i < inHeight; i++) {
-			shift = 0;
 			shiftCol = seam.getPixCol(i);
-			for (int j = 0; j < currWidth; j++) {
-				if (j == shiftCol) {
-					shift = 1;
-				}
-				tmpImageMatrix[i][j] = imageMatrix[i][j + shift];
+			pos = i * stride + shiftCol;
+			totalSeamsEnergy += energyMatrix[pos];
+			tail = currWidth - shiftCol;
+			System.arraycopy(imageMatrix, pos + 1, imageMatrix, pos, tail);
+			System.arraycopy(grayMatrix, pos + 1, grayMatrix, pos, tail);
+			System.arraycopy(energyMatrix, pos + 1, energyMatrix, pos, tail);
+			System.arraycopy(cuMatrix, pos + 1, cuMatrix, pos, tail);
+			System.arraycopy(clMatrix, pos + 1, clMatrix, pos, tail);
+			System.arraycopy(crMatrix, pos + 1, crMatrix, pos, tail);
+			if (shiftCosts) {
+				System.arraycopy(costMatrix, pos + 1, costMatrix, pos, tail);
+				SeamKernels.removeDirection(trackingtMatrix, i * trackingStride, shiftCol, currWidth + 1);
+			}
+			if (columnMatrix != null) {
+				System.arraycopy(columnMatrix, pos + 1, columnMatrix, pos, tail);
 			}
 		}
-		imageMatrix = tmpImageMatrix;
+		updateEnergy(seam);
+
+		// the shifted cost matrix is reused by the next calculateCostMatrix call
+		removedSeam = shiftCosts ? seam : null;
+		costMatrixCalculated = shiftCosts;
 	}
 
-	private void calculateEnergy() {
-		energyMatrix = new long[inHeight][currWidth];
-		int nextCol, nextRow, currPix, nextColPix, nextRowPix;
-		double di, dj;
+	// removes a batch of seams found by findSeams together, compacting every row in one pass
+	private void removeSeams(Seam[] seams, int offset, int count) {
+		int row, write, from, to, len, col;
 
+		if (count == 1) {
+			removeSeam(seams[offset]);
+			return;
+		}
+
+		logger.log("Removing " + count + " seams");
 		for (int i = 0; i < inHeight; i++) {
-			for (int j = 0; j < currWidth; j++) {
-				if (j == currWidth - 1) {
-					nextCol = j - 1;
-				} else{
-					nextCol = j + 1;
+			row = i * stride;
+			sortBatchColumns(seams, offset, count, i);
+			write = batchColumns[0];
+			for (int t = 0; t < count; t++) {
+				totalSeamsEnergy += energyMatrix[row + batchColumns[t]];
+				from = batchColumns[t] + 1;
+				to = (t < count - 1) ? batchColumns[t + 1] : currWidth;
+				len = to - from;
+				System.arraycopy(imageMatrix, row + from, imageMatrix, row + write, len);
+				System.arraycopy(grayMatrix, row + from, grayMatrix, row + write, len);
+				System.arraycopy(energyMatrix, row + from, energyMatrix, row + write, len);
+				System.arraycopy(cuMatrix, row + from, cuMatrix, row + write, len);
+				System.arraycopy(clMatrix, row + from, clMatrix, row + write, len);
+				System.arraycopy(crMatrix, row + from, crMatrix, row + write, len);
+				if (columnMatrix != null) {
+					System.arraycopy(columnMatrix, row + from, columnMatrix, row + write, len);
 				}
+				write += len;
+			}
+		}
+		currWidth -= count;
+
+		// the t-th removed pixel of a row from the left ends up at its column - t
+		if (currWidth >= 2) {
+			for (int i = 0; i < inHeight; i++) {
+				sortBatchColumns(seams, offset, count, i);
+				for (int t = 0; t < count; t++) {
+					col = batchColumns[t] - t;
+					calculateEnergyRow(i, Math.max(col - 1, 0), Math.min(col, currWidth - 1) + 1);
+				}
+			}
+		}
 
-				if (i == inHeight - 1){
-					nextRow = i - 1;
-				} else {
-					nextRow = i + 1;
+		// the seams are stored as if they were removed one by one
+		for (int i = 0; i < inHeight; i++) {
+			for (int t = count - 1; t > 0; t--) {
+				col = seams[offset + t].getPixCol(i);
+				for (int u = 0; u < t; u++) {
+					if (seams[offset + u].getPixCol(i) < seams[offset + t].getPixCol(i)) {
+						col--;
+					}
 				}
+				seams[offset + t].setPixCol(i, col);
+			}
+		}
+
+		costMatrixCalculated = false;
+		removedSeam = null;
+	}
 
-				currPix = toGray(imageMatrix[i][j]);
-				nextColPix = toGray(imageMatrix[i][nextCol]);
-				nextRowPix = toGray(imageMatrix[nextRow][j]);
+	// sorts the columns of the batch seams in row i into batchColumns
+	private void sortBatchColumns(Seam[] seams, int offset, int count, int i) {
+		int col, t;
 
-				//calculate magnitude
-				dj = Math.pow(currPix - nextColPix, 2);
-				di = Math.pow(currPix - nextRowPix, 2);
-				energyMatrix[i][j] = (int) Math.sqrt((di + dj) / 2);
+		for (int k = 0; k < count; k++) {
+			col = seams[offset + k].getPixCol(i);
+			for (t = k; t > 0 && batchColumns[t - 1] > col; t--) {
+				batchColumns[t] = batchColumns[t - 1];
 			}
+			batchColumns[t] = col;
 		}
 	}
 
-	// helper function to calculate gray value
-	private int toGray(int rgb){
-		int r = (rgb >> 16) & 0xFF;
-		int g = (rgb >> 8) & 0xFF;
-		int b = (rgb & 0xFF);
+	private void calculateGrayAndEnergy() {
+		for (int i = 0; i < inHeight; i++) {
+			SeamKernels.grayRow(imageMatrix, grayMatrix, i * stride, 0, currWidth);
+		}
+		calculateEnergy();
+	}
 
-		int grayLevel = (r + g + b) / 3;
-		return grayLevel;
+	private void calculateEnergy() {
+		for (int i = 0; i < inHeight; i++) {
+			calculateEnergyRow(i, 0, currWidth);
+		}
+	}
+
+	// calculates the energy and the forward energy terms of columns [from, to) of row i
+	private void calculateEnergyRow(int i, int from, int to) {
+		int nextRow = (i == inHeight - 1) ? i - 1 : i + 1;
+		SeamKernels.energyRow(grayMatrix, energyMatrix, i * stride, nextRow * stride, from, to, currWidth);
+		if (i > 0) {
+			SeamKernels.forwardTermsRow(grayMatrix, cuMatrix, clMatrix, crMatrix,
+					i * stride, (i - 1) * stride, from, to, currWidth);
+		}
 	}
 
-	// helper function to calculate absolute seam position
-	private void convertSeamPositions(Seam[] seams) {
-		int shift;
+	// recalculates the energy next to a removed seam, all other pixels keep their neighbors.
+	// pixel j in row i only looks at (i, j +- 1) and (i +- 1, j), and since the seam moves
+	// at most one column between rows, only the pixels at seam - 1 and seam are affected.
+	// the same holds for the forward energy terms, which look at (i, j +- 1) and (i - 1, j).
+	private void updateEnergy(Seam seam) {
+		int from, to;
+
+		// a single column has no neighbors, and no more seams can be removed from it anyway
+		if (currWidth < 2)
+			return;
 
 		for (int i = 0; i < inHeight; i++) {
-			for (int k = 0; k < numOfSeams; k++) {
-				shift = 0;
-				for (int l = k - 1; l >= 0; l--) {
+			from = Math.max(seam.getPixCol(i) - 1, 0);
+			to = Math.min(seam.getPixCol(i), currWidth - 1);
+			calculateEnergyRow(i, from, to + 1);
+		}
+	}
+
+	// helper function to calculate absolute seam positions of rows [fromRow, toRow) of an
+	// image of the given width. seam k holds its columns in the image left after removing
+	// seams 0..k-1, so its original column is the (column + 1)-th one not removed yet. the
+	// remaining columns are counted by a Fenwick tree, which finds and removes a column in O(log width).
+	private void convertSeamPositions(Seam[] seams, int width, int fromRow, int toRow, int[] tree) {
+		int col, pos, remaining, step;
+		int topStep = Integer.highestOneBit(width);
+
+		for (int i = fromRow; i < toRow; i++) {
+			// every column is present, so each node counts the columns it covers
+			for (int n = 1; n <= width; n++) {
+				tree[n] = n & -n;
+			}
+
+			for (int k = 0; k < seams.length; k++) {
+				col = seams[k].getPixCol(i);
 
-					//account for previous shifts
-					if (seams[k].getPixCol(i) + shift >= seams[l].getPixCol(i)) {
-						shift++;
+				// find the (col + 1)-th remaining column
+				pos = 0;
+				remaining = col + 1;
+				for (step = topStep; step > 0; step >>= 1) {
+					if (pos + step <= width && tree[pos + step] < remaining) {
+						pos += step;
+						remaining -= tree[pos];
 					}
 				}
-				seams[k].shiftSeam(i, shift);
+				seams[k].shiftSeam(i, pos - col);
+
+				// and remove it
+				for (int n = pos + 1; n <= width; n += n & -n) {
+					tree[n]--;
+				}
 			}
 		}
 	}
 
+	// the plan of the seams removed from an image of the given width.
+	// the rows are independent, each chunk of rows has its own tree
+	private SeamPlan toPlan(Seam[] seams, int width) {
+		int count = seams.length;
+		int[] columns = new int[inHeight * count];
+
+		forEachRows((fromRow, toRow) -> {
+			int[] tree = new int[width + 1];
+
+			convertSeamPositions(seams, width, fromRow, toRow, tree);
+			for (int i = fromRow; i < toRow; i++) {
+				for (int k = 0; k < count; k++) {
+					columns[i * count + k] = seams[k].getPixCol(i) + seams[k].getColShift(i);
+				}
+				Arrays.sort(columns, i * count, (i + 1) * count);
+			}
+		});
+		return new SeamPlan(width, inHeight, count, columns);
+	}
+
+	//MARK: Seam plan
+	// uses the seams of the plan instead of finding them, the plan must be of the working image
+	// and of the same parameters, see seamPlanKey(). both resize() and showSeams accept it.
+	public void setSeamPlan(SeamPlan seamPlan) {
+		checkSeamsFitImage();
+		if (seamPlan.width != inWidth | seamPlan.height != inHeight | seamPlan.numOfSeams != numOfSeams)
+			throw new IllegalArgumentException("The seam plan is of another image or number of seams");
+
+		this.seamPlan = seamPlan;
+	}
+
+	// finds the seams of the carve, once
+	public SeamPlan seamPlan() {
+		if (seamPlan == null) {
+			checkSeamsFitImage();
+			seamPlan = toPlan(removeAndStoreSeams(numOfSeams), inWidth);
+		}
+		return seamPlan;
+	}
+
+	// describes everything besides the working image that the seams depend on
+	public String seamPlanKey() {
+		return numOfSeams + "/" + pyramidLevels + "/" + pyramidBand + "/" + batchSize;
+	}
+
 	//MARK: Methods
 	public BufferedImage resize() {
 		return resizeOp.apply();
 	}
 
 	private BufferedImage reduceImageWidth() {
+		if (seamPlan != null)
+			return applySeamPlan(seamPlan::removeRows, outWidth);
+
+		Seam[] batch = new Seam[batchSize];
+		int found;
+
+		for (int k = 0; k < batchSize; k++) {
+			batch[k] = new Seam(inHeight);
+		}
 
 		// remove seams
-		for (int i = 0; i < numOfSeams; i++) {
-			calculateEnergy();
-			calculateCostMatrix();
-			Seam seam = findMinSeam();
-			removeSeam(seam);
+		for (int i = 0; i < numOfSeams; i += found) {
+			found = findSeams(batch, 0, Math.min(batchSize, numOfSeams - i));
+			removeSeams(batch, 0, found);
 		}
 
 		BufferedImage outImage = newEmptyOutputSizedImage();
-		for (int i = 0; i < inHeight; i++) {
-			for (int j = 0; j < currWidth; j++) {
-				outImage.setRGB(j, i, imageMatrix[i][j]);
-			}
-		}
+		outImage.setRGB(0, 0, currWidth, inHeight, imageMatrix, 0, stride);
 		return outImage;
 	}
 
 	private BufferedImage increaseImageWidth() {
-		Seam[] seams = new Seam[numOfSeams];
-		Set<Integer>  seamsInRow;
-		int shift;
+		return applySeamPlan(seamPlan()::insertRows, outWidth);
+	}
 
-		// remove and store seams
-		for (int i = 0; i < numOfSeams; i++) {
-			calculateEnergy();
-			calculateCostMatrix();
-			Seam seam = findMinSeam();
+	// builds the rows of the resized image from the working image, in chunks of rows
+	private BufferedImage applySeamPlan(SeamPlanRows rows, int width) {
+		int[] inPixels = workingImage.getRGB(0, 0, inWidth, inHeight, null, 0, inWidth);
+		int[] outPixels = new int[width * inHeight];
 
-			logger.log("Storing seam");
-			seams[i] = seam;
-			removeSeam(seam);
-		}
+		forEachRows((fromRow, toRow) -> rows.apply(inPixels, inWidth, outPixels, width, fromRow, toRow));
 
-		convertSeamPositions(seams);
 		BufferedImage outImage = newEmptyOutputSizedImage();
-		for (int i = 0; i < inHeight; i++) {
-			shift = 0;
-			seamsInRow = new HashSet<Integer>();
+		outImage.setRGB(0, 0, width, inHeight, outPixels, 0, width);
+		return outImage;
+	}
 
-			// add seams positions per row
-			for (int k = 0; k < numOfSeams; k++) {
-				seamsInRow.add(seams[k].getPixCol(i) + seams[k].getColShift(i));
-			}
+	// enlarges the image in rounds of at most half of its current width. every round finds its
+	// seams on the buffers the previous round has left, so only the gray and the energy of the
+	// enlarged image are recalculated between the rounds
+	private BufferedImage increaseImageWidthInRounds() {
+		// a plan can only be set for a single round, which is the plain enlargement
+		if (seamPlan != null)
+			return increaseImageWidth();
+
+		int rounds = 0;
+		for (int width = inWidth; width < outWidth; width += Math.min(width / 2, outWidth - width)) {
+			rounds++;
+		}
 
-			for (int j = 0; j < outWidth; j++) {
-				outImage.setRGB(j, i, workingImage.getRGB((j - shift), i));
-				if (seamsInRow.contains(j)) {
-					shift++;
-				}
+		roundMatrix = new int[inHeight * stride];
+		roundTimes = new long[rounds];
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			int width = currWidth;
+			int count = Math.min(width / 2, outWidth - width);
+
+			logger.log("Round " + (r + 1) + " of " + rounds + ": inserting " + count + " seams");
+			System.arraycopy(imageMatrix, 0, roundMatrix, 0, inHeight * stride);
+			SeamPlan plan = toPlan(removeAndStoreSeams(count), width);
+			forEachRows((fromRow, toRow) -> plan.insertRows(roundMatrix, stride, imageMatrix, stride, fromRow, toRow));
+
+			// the enlarged image is a new image, its cost matrix is calculated from scratch
+			currWidth = width + count;
+			removedSeam = null;
+			costMatrixCalculated = false;
+			if (r < rounds - 1) {
+				calculateGrayAndEnergy();
 			}
+
+			roundTimes[r] = System.nanoTime() - start;
+			logger.log("Round " + (r + 1) + " done in " + roundTimes[r] / 1000000 + " ms");
 		}
+
+		BufferedImage outImage = newEmptyOutputSizedImage();
+		outImage.setRGB(0, 0, outWidth, inHeight, imageMatrix, 0, stride);
 		return outImage;
 	}
 
-	public BufferedImage showSeams(int seamColorRGB) {
-		Seam[] seams = new Seam[numOfSeams];
-		Set<Integer>  seamsInRow;
+	// the time in nanoseconds of every round of the last staged enlargement
+	public long[] roundTimes() {
+		if (roundTimes == null)
+			throw new RuntimeException("No staged enlargement was done");
+
+		return roundTimes.clone();
+	}
+
+	private Seam[] removeAndStoreSeams(int count) {
+		Seam[] seams = new Seam[count];
+		int found;
+
+		for (int k = 0; k < count; k++) {
+			seams[k] = new Seam(inHeight);
+		}
 
 		// remove and store seams
-		for (int i = 0; i < numOfSeams; i++) {
-			calculateEnergy();
-			calculateCostMatrix();
-			Seam seam = findMinSeam();
+		for (int i = 0; i < count; i += found) {
+			found = findSeams(seams, i, Math.min(batchSize, count - i));
 
 			logger.log("Storing seam");
-			seams[i] = seam;
-			removeSeam(seam);
+			removeSeams(seams, i, found);
 		}
+		return seams;
+	}
 
-		convertSeamPositions(seams);
-		BufferedImage outImage = newEmptyInputSizedImage();
-		for (int i = 0; i < inHeight; i++) {
-			seamsInRow = new HashSet<Integer>();
+	// removes all the seams, recording for every pixel of the working image the index of
+	// the seam that removed it. columnMatrix keeps the original column of every pixel.
+	public SeamMap seamMap() {
+		checkSeamsFitImage();
+		int[] removalOrder = new int[inHeight * inWidth];
+		Seam[] batch = new Seam[batchSize];
+		int row, found;
 
-			// add seams positions per row
-			for (int k = 0; k < numOfSeams; k++) {
-				seamsInRow.add(seams[k].getPixCol(i) + seams[k].getColShift(i));
+		Arrays.fill(removalOrder, numOfSeams);
+		columnMatrix = new int[inHeight * stride];
+		for (int i = 0; i < inHeight; i++) {
+			for (int j = 0; j < inWidth; j++) {
+				columnMatrix[i * stride + j] = j;
 			}
+		}
 
-			for (int j = 0; j < inWidth; j++) {
-				if (seamsInRow.contains(j)) {
-					outImage.setRGB(j, i, seamColorRGB);
-				} else {
-					outImage.setRGB(j, i, workingImage.getRGB((j), i));
+		for (int k = 0; k < batchSize; k++) {
+			batch[k] = new Seam(inHeight);
+		}
+
+		for (int k = 0; k < numOfSeams; k += found) {
+			found = findSeams(batch, 0, Math.min(batchSize, numOfSeams - k));
+
+			logger.log("Storing seam");
+			for (int t = 0; t < found; t++) {
+				for (int i = 0; i < inHeight; i++) {
+					row = i * stride;
+					removalOrder[i * inWidth + columnMatrix[row + batch[t].getPixCol(i)]] = k + t;
 				}
 			}
+			removeSeams(batch, 0, found);
 		}
+		return new SeamMap(inWidth, inHeight, numOfSeams, removalOrder);
+	}
+
+	public BufferedImage showSeams(int seamColorRGB) {
+		SeamPlan plan = seamPlan();
+		int[] pixels = workingImage.getRGB(0, 0, inWidth, inHeight, null, 0, inWidth);
+
+		forEachRows((fromRow, toRow) -> plan.markRows(pixels, inWidth, seamColorRGB, fromRow, toRow));
+
+		BufferedImage outImage = newEmptyInputSizedImage();
+		outImage.setRGB(0, 0, inWidth, inHeight, pixels, 0, inWidth);
 		return outImage;
 	}
+
+	// only a staged enlargement inserts more seams than the working image has to remove
+	private void checkSeamsFitImage() {
+		if (numOfSeams > inWidth / 2)
+			throw new RuntimeException("Can not apply seam carving: too many seams...");
+	}
 }
@@ -0,0 +1,220 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+
+// reduces both dimensions of an image by removing vertical and horizontal seams from a single
+// working buffer, without rotating the image. the energy is shared between the two seam types,
+// and while both dimensions still need to shrink, the cheaper of the two best seams is removed.
+public class SeamsCarver2D extends ImageProcessor {
+
+	//MARK: Fields
+	private int numOfVerticalSeams;
+	private int numOfHorizontalSeams;
+
+	// flat row major buffers with a fixed stride of inWidth,
+	// only the first currHeight rows and currWidth columns are used
+	private int stride;
+	private int[] imageMatrix;
+	private short[] grayMatrix;
+	private short[] energyMatrix;
+	private long[] costMatrix;
+	private char[] trackingtMatrix;
+	private int[] verticalSeam;
+	private int[] horizontalSeam;
+	private int currWidth;
+	private int currHeight;
+	private long totalSeamsCost;
+
+
+	//MARK: Constructor
+	public SeamsCarver2D(Logger logger, BufferedImage workingImage,
+						 int outWidth, int outHeight, RGBWeights rgbWeights) {
+		super(logger, workingImage, rgbWeights, outWidth, outHeight);
+
+		numOfVerticalSeams = inWidth - outWidth;
+		numOfHorizontalSeams = inHeight - outHeight;
+
+		if (inWidth < 2 | inHeight < 2)
+			throw new RuntimeException("Can not apply seam carving: workingImage is too small");
+
+		if (numOfVerticalSeams < 0 | numOfHorizontalSeams < 0)
+			throw new RuntimeException("Can not apply 2D seam carving: the image can only be reduced");
+
+		if (numOfVerticalSeams > inWidth / 2 | numOfHorizontalSeams > inHeight / 2)
+			throw new RuntimeException("Can not apply seam carving: too many seams...");
+
+		currWidth = inWidth;
+		currHeight = inHeight;
+		initialCalculations();
+	}
+
+	private void initialCalculations() {
+		stride = inWidth;
+		imageMatrix = new int[inHeight * stride];
+		grayMatrix = new short[inHeight * stride];
+		energyMatrix = new short[inHeight * stride];
+		costMatrix = new long[inHeight * stride];
+		trackingtMatrix = new char[inHeight * stride];
+		verticalSeam = new int[inHeight];
+		horizontalSeam = new int[inWidth];
+
+		workingImage.getRGB(0, 0, inWidth, inHeight, imageMatrix, 0, stride);
+		SeamKernels.grayRow(imageMatrix, grayMatrix, 0, 0, inHeight * stride);
+		for (int i = 0; i < inHeight; i++) {
+			calculateEnergy(i, 0, currWidth);
+		}
+	}
+
+	//MARK: Methods
+	public BufferedImage resize() {
+		long verticalCost, horizontalCost;
+
+		while (currWidth > outWidth | currHeight > outHeight) {
+			if (currWidth > outWidth && currHeight > outHeight) {
+				verticalCost = findVerticalSeam();
+				horizontalCost = findHorizontalSeam();
+				if (verticalCost <= horizontalCost) {
+					removeVerticalSeam(verticalCost);
+				} else {
+					removeHorizontalSeam(horizontalCost);
+				}
+			} else if (currWidth > outWidth) {
+				removeVerticalSeam(findVerticalSeam());
+			} else {
+				removeHorizontalSeam(findHorizontalSeam());
+			}
+		}
+
+		logger.log("Total seams cost: " + totalSeamsCost);
+		BufferedImage outImage = newEmptyOutputSizedImage();
+		outImage.setRGB(0, 0, currWidth, currHeight, imageMatrix, 0, stride);
+		return outImage;
+	}
+
+	// the sum of the costs of all removed seams
+	public long totalSeamsCost() {
+		return totalSeamsCost;
+	}
+
+	//MARK: Seams
+	private long findVerticalSeam() {
+		return findSeam(currHeight, stride, currWidth, 1, verticalSeam);
+	}
+
+	private long findHorizontalSeam() {
+		return findSeam(currWidth, 1, currHeight, stride, horizontalSeam);
+	}
+
+	// finds the minimal seam crossing the lines of the image, where the lines are its rows for
+	// vertical seams and its columns for horizontal seams. lineStep is the distance between two
+	// lines and step is the distance between two pixels of a line. the seam holds the position
+	// of the removed pixel in every line, and its cost is returned.
+	private long findSeam(int lines, int lineStep, int length, int step, int[] seam) {
+		SeamKernels.firstCostRow(energyMatrix, costMatrix, trackingtMatrix, 0, step, 0, length);
+		for (int l = 1; l < lines; l++) {
+			SeamKernels.costRow(grayMatrix, energyMatrix, costMatrix, trackingtMatrix,
+					l * lineStep, (l - 1) * lineStep, step, 0, length, length);
+		}
+
+		int lastLine = (lines - 1) * lineStep;
+		int pos = 0;
+		long min = Long.MAX_VALUE;
+		for (int j = 0; j < length; j++) {
+			if (costMatrix[lastLine + j * step] <= min) {
+				min = costMatrix[lastLine + j * step];
+				pos = j;
+			}
+		}
+
+		// backtrack
+		for (int l = lines - 1; l >= 0; l--) {
+			seam[l] = pos;
+			switch (trackingtMatrix[l * lineStep + pos * step]) {
+				case 'l':
+					pos--;
+					break;
+				case 'r':
+					pos++;
+					break;
+				default:
+					break;
+			}
+		}
+		return min;
+	}
+
+	// removes the vertical seam by shifting the tail of every row one column to the left
+	private void removeVerticalSeam(long cost) {
+		int pos, tail;
+
+		logger.log("Removing vertical seam, cost: " + cost);
+		totalSeamsCost += cost;
+		currWidth--;
+		for (int i = 0; i < currHeight; i++) {
+			pos = i * stride + verticalSeam[i];
+			tail = currWidth - verticalSeam[i];
+			System.arraycopy(imageMatrix, pos + 1, imageMatrix, pos, tail);
+			System.arraycopy(grayMatrix, pos + 1, grayMatrix, pos, tail);
+			System.arraycopy(energyMatrix, pos + 1, energyMatrix, pos, tail);
+		}
+
+		// only the pixels at seam - 1 and seam got new neighbors
+		for (int i = 0; i < currHeight; i++) {
+			calculateEnergy(i, Math.max(verticalSeam[i] - 1, 0), Math.min(verticalSeam[i] + 1, currWidth));
+		}
+	}
+
+	// removes the horizontal seam by shifting the bottom of every column one row up. the rows are
+	// walked in order, and every row takes the runs of columns whose seam is at or above it from
+	// the row below
+	private void removeHorizontalSeam(long cost) {
+		int top, bottom, row, from, to;
+
+		logger.log("Removing horizontal seam, cost: " + cost);
+		totalSeamsCost += cost;
+		currHeight--;
+		top = bottom = horizontalSeam[0];
+		for (int j = 1; j < currWidth; j++) {
+			top = Math.min(top, horizontalSeam[j]);
+			bottom = Math.max(bottom, horizontalSeam[j]);
+		}
+		for (int i = top; i < currHeight; i++) {
+			row = i * stride;
+			for (from = 0; from < currWidth; from = to) {
+				while (from < currWidth && horizontalSeam[from] > i)
+					from++;
+				for (to = from; to < currWidth && horizontalSeam[to] <= i; to++) {
+				}
+				System.arraycopy(imageMatrix, row + stride + from, imageMatrix, row + from, to - from);
+				System.arraycopy(grayMatrix, row + stride + from, grayMatrix, row + from, to - from);
+				System.arraycopy(energyMatrix, row + stride + from, energyMatrix, row + from, to - from);
+			}
+		}
+
+		// only the pixels at seam - 1 and seam got new neighbors, in runs of columns of a row
+		for (int i = Math.max(top - 1, 0); i <= Math.min(bottom, currHeight - 1); i++) {
+			for (from = 0; from < currWidth; from = to) {
+				while (from < currWidth && !isNextToSeam(i, horizontalSeam[from]))
+					from++;
+				for (to = from; to < currWidth && isNextToSeam(i, horizontalSeam[to]); to++) {
+				}
+				if (to > from)
+					calculateEnergy(i, from, to);
+			}
+		}
+	}
+
+	private static boolean isNextToSeam(int i, int seam) {
+		return i == seam || i == seam - 1;
+	}
+
+	//MARK: Energy
+	private void calculateEnergy(int i, int from, int to) {
+		// a single row or column has no neighbors, and no more seams can be removed from it anyway
+		if (currWidth < 2 | currHeight < 2)
+			return;
+
+		int nextRow = (i == currHeight - 1) ? i - 1 : i + 1;
+		SeamKernels.energyRow(grayMatrix, energyMatrix, i * stride, nextRow * stride, from, to, currWidth);
+	}
+}
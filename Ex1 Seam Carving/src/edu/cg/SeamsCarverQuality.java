@@ -0,0 +1,48 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+// reports the speed and the quality of the pyramid mode of SeamsCarver against the exact mode.
+// the quality is the total energy of the removed seams relative to the exact one (1.0 is exact).
+// usage: SeamsCarverQuality <image> <outWidth> [levels] [bandWidth]
+public class SeamsCarverQuality {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("usage: SeamsCarverQuality <image> <outWidth> [levels] [bandWidth]");
+			return;
+		}
+
+		BufferedImage image = ImageIO.read(new File(args[0]));
+		if (image == null)
+			throw new IOException("Can't read image: " + args[0]);
+
+		int outWidth = Integer.parseInt(args[1]);
+		int levels = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		int bandWidth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+		RGBWeights rgbWeights = new RGBWeights(1, 1, 1);
+		Logger logger = s -> { };
+
+		SeamsCarver exact = new SeamsCarver(logger, image, outWidth, rgbWeights);
+		long start = System.nanoTime();
+		exact.resize();
+		long exactTime = System.nanoTime() - start;
+
+		SeamsCarver pyramid = new SeamsCarver(logger, image, outWidth, rgbWeights);
+		pyramid.setPyramidMode(levels, bandWidth);
+		start = System.nanoTime();
+		pyramid.resize();
+		long pyramidTime = System.nanoTime() - start;
+
+		System.out.println("Image: " + image.getWidth() + "x" + image.getHeight() + " -> " + outWidth
+				+ ", pyramid levels: " + levels + ", band width: " + bandWidth);
+		System.out.printf("exact:   %d ms, seams energy %d%n", exactTime / 1000000, exact.totalSeamsEnergy());
+		System.out.printf("pyramid: %d ms, seams energy %d%n", pyramidTime / 1000000, pyramid.totalSeamsEnergy());
+		System.out.printf("speedup %.2fx, quality %.4f%n", exactTime / (double) pyramidTime,
+				pyramid.totalSeamsEnergy() / (double) Math.max(exact.totalSeamsEnergy(), 1));
+	}
+}
@@ -0,0 +1,53 @@
+package edu.cg.batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// checks that BatchRunner.expand finds the files of directories and of globs of one, two and
+// any number of levels, in a tree of empty files made in a temporary directory.
+// usage: BatchInputsCheck
+public class BatchInputsCheck {
+	private static final String[] FILES = { "a.png", "b.jpg", "notes.txt", "x/c.png", "x/b.png", "y/b.png",
+			"y/z/d.png" };
+
+	public static void main(String[] args) throws IOException {
+		Path root = Files.createTempDirectory("batch-inputs");
+		try {
+			for (String file : FILES) {
+				Path path = root.resolve(file);
+				Files.createDirectories(path.getParent());
+				Files.createFile(path);
+			}
+
+			check(root, "", "a.png", "b.jpg");
+			check(root, "*.png", "a.png");
+			check(root, "*/*.png", "x/b.png", "x/c.png", "y/b.png");
+			check(root, "*/b.png", "x/b.png", "y/b.png");
+			check(root, "y/*/*.png", "y/z/d.png");
+			check(root, "**.png", "a.png", "x/b.png", "x/c.png", "y/b.png", "y/z/d.png");
+			System.out.println("BatchRunner.expand: all inputs found");
+		} finally {
+			try (Stream<Path> paths = Files.walk(root)) {
+				for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator)
+					Files.delete(path);
+			}
+		}
+	}
+
+	// the files input expands to under root, relative to root, are expected
+	private static void check(Path root, String input, String... expected) throws IOException {
+		String path = input.isEmpty() ? root.toString() : root + "/" + input;
+		List<String> found = new ArrayList<>();
+		for (Path file : BatchRunner.expand(Collections.singletonList(path)))
+			found.add(root.relativize(file).toString().replace('\\', '/'));
+		if (!found.equals(Arrays.asList(expected)))
+			throw new IllegalStateException(input + " expanded to " + found + ", expected " + Arrays.asList(expected));
+	}
+}
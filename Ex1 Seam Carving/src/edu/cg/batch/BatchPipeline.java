@@ -0,0 +1,269 @@
+package edu.cg.batch;
+
+import java.awt.image.BufferedImage;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.cg.batch.BatchRunner.Result;
+
+// the batch in three stages of threads: the readers decode the images, the processors apply the
+// operation and the writers encode the answers. the stages pass the images through bounded
+// queues, and a stage that is ahead blocks on a full queue, so at most the queues and the
+// threads hold images. every stage counts its time working, waiting for images and blocked on
+// the next stage, and the queues sample their occupancy on every put and take.
+public class BatchPipeline {
+	private final BatchRunner runner;
+	private final Stage read, process, write;
+	private final Queue decoded, processed;
+	private long wallNanos;
+
+	public BatchPipeline(BatchRunner runner, int readers, int processors, int writers, int capacity) {
+		if (readers < 1 || processors < 1 || writers < 1)
+			throw new IllegalArgumentException("Every stage needs a thread");
+		if (capacity < 1)
+			throw new IllegalArgumentException("Queue capacity must be positive");
+		this.runner = runner;
+		read = new Stage("read", readers);
+		process = new Stage("process", processors);
+		write = new Stage("write", writers);
+		decoded = new Queue("decoded", capacity);
+		processed = new Queue("processed", capacity);
+	}
+
+	//MARK: Stats
+	public static class Stage {
+		public final String name;
+		public final int threads;
+		private final AtomicLong images = new AtomicLong();
+		private final AtomicLong busyNanos = new AtomicLong();
+		private final AtomicLong waitingNanos = new AtomicLong();
+		private final AtomicLong blockedNanos = new AtomicLong();
+
+		Stage(String name, int threads) {
+			this.name = name;
+			this.threads = threads;
+		}
+
+		public long images() {
+			return images.get();
+		}
+
+		// the parts of the time of the threads spent working, waiting for an image from the
+		// previous stage and blocked on a full queue to the next stage
+		public double busy(long wallNanos) {
+			return busyNanos.get() / (double) (threads * wallNanos);
+		}
+
+		public double waiting(long wallNanos) {
+			return waitingNanos.get() / (double) (threads * wallNanos);
+		}
+
+		public double blocked(long wallNanos) {
+			return blockedNanos.get() / (double) (threads * wallNanos);
+		}
+	}
+
+	public static class Queue {
+		public final String name;
+		public final int capacity;
+		private final BlockingQueue<Job> jobs;
+		private final AtomicLong samples = new AtomicLong();
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicInteger max = new AtomicInteger();
+
+		Queue(String name, int capacity) {
+			this.name = name;
+			this.capacity = capacity;
+			jobs = new ArrayBlockingQueue<>(capacity);
+		}
+
+		public double meanOccupancy() {
+			long n = samples.get();
+			return n == 0 ? 0 : total.get() / (double) n;
+		}
+
+		public int maxOccupancy() {
+			return max.get();
+		}
+
+		// the producer is blocked while the queue is full
+		void put(Job job, Stage producer) throws InterruptedException {
+			long start = System.nanoTime();
+			jobs.put(job);
+			producer.blockedNanos.addAndGet(System.nanoTime() - start);
+			sample();
+		}
+
+		// the consumer waits while the queue is empty
+		Job take(Stage consumer) throws InterruptedException {
+			long start = System.nanoTime();
+			Job job = jobs.take();
+			consumer.waitingNanos.addAndGet(System.nanoTime() - start);
+			sample();
+			return job;
+		}
+
+		private void sample() {
+			int size = jobs.size();
+			samples.incrementAndGet();
+			total.addAndGet(size);
+			max.accumulateAndGet(size, Math::max);
+		}
+	}
+
+	// an image on its way through the stages, END tells a thread its stage is done
+	private static class Job {
+		final Result result;
+		BufferedImage image;
+
+		Job(Result result) {
+			this.result = result;
+		}
+	}
+
+	private static final Job END = new Job(null);
+
+	//MARK: Running
+	// the results in the order of the files. the images that fail are failed results, and when a
+	// thread of a stage fails, the other threads are interrupted and the run throws
+	public List<Result> run(List<Path> files) throws InterruptedException {
+		Result[] results = new Result[files.size()];
+		for (int i = 0; i < results.length; i++)
+			results[i] = new Result(files.get(i));
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger readers = new AtomicInteger(read.threads);
+		AtomicInteger processors = new AtomicInteger(process.threads);
+
+		ExecutorService threads = Executors.newFixedThreadPool(read.threads + process.threads + write.threads);
+		CompletionService<Void> done = new ExecutorCompletionService<>(threads);
+		List<Future<Void>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		try {
+			for (int t = 0; t < read.threads; t++) {
+				futures.add(done.submit(() -> {
+					for (int i; (i = next.getAndIncrement()) < results.length;) {
+						Job job = new Job(results[i]);
+						job.image = step(read, () -> runner.read(job.result));
+						if (job.image != null)
+							decoded.put(job, read);
+					}
+					// the last reader ends the processors. a thread that fails ends nothing, the
+					// others are interrupted instead, and would block on a full queue
+					if (readers.decrementAndGet() == 0)
+						end(decoded, process.threads, read);
+					return null;
+				}));
+			}
+			for (int t = 0; t < process.threads; t++) {
+				futures.add(done.submit(() -> {
+					for (Job job; (job = decoded.take(process)) != END;) {
+						Job in = job;
+						job.image = step(process, () -> runner.process(in.result, in.image));
+						if (job.image != null)
+							processed.put(job, process);
+					}
+					if (processors.decrementAndGet() == 0)
+						end(processed, write.threads, process);
+					return null;
+				}));
+			}
+			for (int t = 0; t < write.threads; t++) {
+				futures.add(done.submit(() -> {
+					for (Job job; (job = processed.take(write)) != END;) {
+						Job in = job;
+						step(write, () -> {
+							runner.write(in.result, in.image);
+							return in.image;
+						});
+					}
+					return null;
+				}));
+			}
+
+			// the threads in the order they end, so a failed one is seen while the others are blocked
+			for (int n = futures.size(); n > 0; n--) {
+				try {
+					done.take().get();
+				} catch (ExecutionException e) {
+					for (Future<Void> future : futures)
+						future.cancel(true);
+					throw new IllegalStateException("A stage of the batch failed", e.getCause());
+				}
+			}
+		} finally {
+			threads.shutdownNow();
+		}
+		wallNanos = System.nanoTime() - start;
+		return Arrays.asList(results);
+	}
+
+	private interface Step {
+		BufferedImage run();
+	}
+
+	// null when the step failed, the failure is in the result of the image
+	private static BufferedImage step(Stage stage, Step step) {
+		long start = System.nanoTime();
+		BufferedImage ans = step.run();
+		stage.busyNanos.addAndGet(System.nanoTime() - start);
+		stage.images.incrementAndGet();
+		return ans;
+	}
+
+	private static void end(Queue queue, int consumers, Stage producer) throws InterruptedException {
+		for (int i = 0; i < consumers; i++)
+			queue.put(END, producer);
+	}
+
+	//MARK: Report
+	public long wallNanos() {
+		return wallNanos;
+	}
+
+	public List<Stage> stages() {
+		return Arrays.asList(read, process, write);
+	}
+
+	public List<Queue> queues() {
+		return Arrays.asList(decoded, processed);
+	}
+
+	// the stage whose threads were busy the largest part of the time, it sets the pace of the batch
+	public Stage bottleneck() {
+		Stage ans = read;
+		for (Stage stage : stages()) {
+			if (stage.busy(wallNanos) > ans.busy(wallNanos))
+				ans = stage;
+		}
+		return ans;
+	}
+
+	public void report(PrintStream out) {
+		double seconds = wallNanos / 1e9;
+		for (Stage stage : stages()) {
+			out.printf(Locale.ROOT, "%-7s %2d threads, %d images, %.1f images/s, busy %.0f%%, waiting %.0f%%,"
+					+ " blocked %.0f%%%n", stage.name, stage.threads, stage.images(), stage.images() / seconds,
+					100 * stage.busy(wallNanos), 100 * stage.waiting(wallNanos), 100 * stage.blocked(wallNanos));
+		}
+		for (Queue queue : queues()) {
+			out.printf(Locale.ROOT, "%-9s queue: capacity %d, mean %.1f, max %d%n", queue.name, queue.capacity,
+					queue.meanOccupancy(), queue.maxOccupancy());
+		}
+		Stage bottleneck = bottleneck();
+		out.println("bottleneck: " + bottleneck.name + (bottleneck == process ? " (CPU-bound)" : " (I/O-bound)"));
+	}
+}
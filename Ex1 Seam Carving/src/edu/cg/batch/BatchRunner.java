@@ -0,0 +1,348 @@
+package edu.cg.batch;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import edu.cg.ParallelPngWriter;
+import edu.cg.RGBWeights;
+import edu.cg.RawImage;
+
+// runs one operation on many images without a display. the inputs are files, directories of
+// images, or globs such as photos/*.jpg and photos/**.png, and every image is read, processed
+// and written as a PNG or a raw image by the stages of a BatchPipeline. the time of every step of every image
+// is written to batch-summary.csv in the output directory, and the stages are reported.
+public class BatchRunner {
+	public static final String USAGE = "usage: Main [--out <dir>] [--format png|png-parallel|raw] [--level <0-9>] [--readers <n>] [--workers <n>] [--writers <n>]"
+			+ " [--queue <n>] [--weights <r,g,b>] <operation> <input>...\n"
+			+ "operations: hue, greyscale, gradient, nearest:WxH, bilinear:WxH, bicubic:WxH, lanczos:WxH,"
+			+ " seam:WxH, seams-vertical:W, seams-horizontal:H";
+	public static final String SUMMARY = "batch-summary.csv";
+
+	private final OperationSpec operation;
+	private final Path outDir;
+	private final Format format;
+	private final ParallelPngWriter pngWriter;
+
+	// level is the compression level of PNG_PARALLEL
+	public BatchRunner(OperationSpec operation, Path outDir, Format format, int level) {
+		this.operation = operation;
+		this.outDir = outDir;
+		this.format = format;
+		pngWriter = new ParallelPngWriter(level, ForkJoinPool.commonPool());
+	}
+
+	// the formats of the outputs, raw images are read back much faster for the next run
+	public enum Format {
+		PNG("png"),
+		PNG_PARALLEL("png"),
+		RAW(RawImage.EXTENSION);
+
+		public final String extension;
+
+		Format(String extension) {
+			this.extension = extension;
+		}
+	}
+
+	//MARK: Results
+	public static class Result {
+		public final Path input;
+		public Path output;
+		public int inWidth, inHeight, outWidth, outHeight;
+		public long readNanos, processNanos, writeNanos;
+		// null when the image was written
+		public String error;
+
+		Result(Path input) {
+			this.input = input;
+		}
+	}
+
+	//MARK: Steps
+	// the steps of the stages of BatchPipeline, they time themselves into the result, and give
+	// null and the error in the result when they fail. errors such as an OutOfMemoryError on a
+	// large image fail the image too, so the threads of the stages never die on an image
+	BufferedImage read(Result result) {
+		try {
+			long start = System.nanoTime();
+			BufferedImage image = read(result.input);
+			result.readNanos = System.nanoTime() - start;
+			result.inWidth = image.getWidth();
+			result.inHeight = image.getHeight();
+			return image;
+		} catch (Throwable e) {
+			return fail(result, e);
+		}
+	}
+
+	BufferedImage process(Result result, BufferedImage image) {
+		try {
+			long start = System.nanoTime();
+			BufferedImage out = operation.operation.apply(image);
+			result.processNanos = System.nanoTime() - start;
+			result.outWidth = out.getWidth();
+			result.outHeight = out.getHeight();
+			return out;
+		} catch (Throwable e) {
+			return fail(result, e);
+		}
+	}
+
+	BufferedImage write(Result result, BufferedImage image) {
+		try {
+			long start = System.nanoTime();
+			Path output = outputFile(result.input);
+			write(image, output);
+			result.writeNanos = System.nanoTime() - start;
+			result.output = output;
+			return image;
+		} catch (Throwable e) {
+			return fail(result, e);
+		}
+	}
+
+	private static BufferedImage fail(Result result, Throwable e) {
+		result.error = e.getMessage() == null || e instanceof Error ? e.toString() : e.getMessage();
+		return null;
+	}
+
+	// the operations make images of the type of their input, so images of a custom type,
+	// which can not be made by type, are converted to INT_ARGB
+	static BufferedImage read(Path file) throws IOException {
+		if (RawImage.isRaw(file.toFile()))
+			return RawImage.read(file.toFile());
+		BufferedImage image = ImageIO.read(file.toFile());
+		if (image == null)
+			throw new IOException("Not an image: " + file);
+		if (image.getType() == BufferedImage.TYPE_CUSTOM) {
+			BufferedImage argb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = argb.createGraphics();
+			try {
+				g.drawImage(image, 0, 0, null);
+			} finally {
+				g.dispose();
+			}
+			image = argb;
+		}
+		return image;
+	}
+
+	void write(BufferedImage image, Path file) throws IOException {
+		if (format == Format.RAW)
+			RawImage.write(image, file.toFile());
+		else if (format == Format.PNG_PARALLEL)
+			pngWriter.write(image, file.toFile());
+		else if (!ImageIO.write(image, "png", file.toFile()))
+			throw new IOException("No PNG writer for the image: " + file);
+	}
+
+	// name.png becomes name.<operation>.<format> in the output directory
+	Path outputFile(Path file) {
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return outDir.resolve(name + "." + operation.suffix + "." + format.extension);
+	}
+
+	//MARK: Inputs
+	// the image files of the inputs, sorted within every directory and glob
+	public static List<Path> expand(List<String> inputs) throws IOException {
+		Set<String> suffixes = new HashSet<>();
+		for (String suffix : ImageIO.getReaderFileSuffixes())
+			suffixes.add(suffix.toLowerCase(Locale.ROOT));
+		suffixes.add(RawImage.EXTENSION);
+
+		List<Path> files = new ArrayList<>();
+		for (String input : inputs) {
+			int glob = firstGlobChar(input);
+			if (glob >= 0) {
+				files.addAll(glob(input, glob));
+			} else {
+				Path path = Paths.get(input);
+				if (Files.isDirectory(path)) {
+					try (DirectoryStream<Path> dir = Files.newDirectoryStream(path)) {
+						List<Path> images = new ArrayList<>();
+						for (Path file : dir) {
+							if (Files.isRegularFile(file) && suffixes.contains(suffix(file)))
+								images.add(file);
+						}
+						images.sort(null);
+						files.addAll(images);
+					}
+				} else {
+					files.add(path);
+				}
+			}
+		}
+		return files;
+	}
+
+	// the files under the directory before the first glob character that match the whole glob.
+	// the walk goes as deep as the segments of the glob, or all the way down for **
+	private static List<Path> glob(String input, int glob) throws IOException {
+		int separator = Math.max(input.lastIndexOf('/', glob), input.lastIndexOf('\\', glob));
+		Path base = Paths.get(separator < 0 ? "." : input.substring(0, separator + 1));
+		String pattern = input.substring(separator + 1);
+		PathMatcher matcher = base.getFileSystem().getPathMatcher("glob:" + pattern);
+		int depth = 1;
+		for (int i = 0; i < pattern.length(); i++) {
+			if (pattern.charAt(i) == '/' || pattern.charAt(i) == '\\')
+				depth++;
+		}
+		if (pattern.indexOf("**") >= 0)
+			depth = Integer.MAX_VALUE;
+
+		try (Stream<Path> paths = Files.walk(base, depth)) {
+			return paths.filter(Files::isRegularFile)
+					.filter(path -> matcher.matches(base.relativize(path)))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+	}
+
+	private static int firstGlobChar(String input) {
+		for (int i = 0; i < input.length(); i++) {
+			if ("*?[{".indexOf(input.charAt(i)) >= 0)
+				return i;
+		}
+		return -1;
+	}
+
+	private static String suffix(Path file) {
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+
+	//MARK: Summary
+	public static void writeSummary(List<Result> results, Path file) throws IOException {
+		try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+			out.println("input,output,in_width,in_height,out_width,out_height,read_ms,process_ms,write_ms,error");
+			for (Result r : results) {
+				out.printf(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%.2f,%.2f,%.2f,%s%n", csv(r.input.toString()),
+						r.output == null ? "" : csv(r.output.toString()), r.inWidth, r.inHeight,
+						r.outWidth, r.outHeight, r.readNanos / 1e6, r.processNanos / 1e6, r.writeNanos / 1e6,
+						r.error == null ? "" : csv(r.error));
+			}
+		}
+	}
+
+	private static String csv(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0)
+			return value;
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	//MARK: Main
+	public static void main(String[] args) throws IOException, InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+
+		Path outDir = Paths.get("out");
+		Format format = Format.PNG;
+		int level = ParallelPngWriter.DEFAULT_LEVEL;
+		// decoding and encoding take about as long as processing, the queues hold two images a worker
+		int workers = Runtime.getRuntime().availableProcessors();
+		int readers = Math.max(1, workers / 2);
+		int writers = Math.max(1, workers / 2);
+		int capacity = -1;
+		RGBWeights rgbWeights = new RGBWeights(1, 1, 1);
+		OperationSpec operation;
+		BatchPipeline pipeline;
+		int i = 0;
+		try {
+			for (; i < args.length && args[i].startsWith("--"); i += 2) {
+				if (i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing the value of " + args[i]);
+				switch (args[i]) {
+					case "--out":
+						outDir = Paths.get(args[i + 1]);
+						break;
+					case "--format":
+						try {
+							format = Format.valueOf(args[i + 1].toUpperCase(Locale.ROOT).replace('-', '_'));
+						} catch (IllegalArgumentException e) {
+							throw new IllegalArgumentException("Unknown format: " + args[i + 1]);
+						}
+						break;
+					case "--level":
+						level = Integer.parseInt(args[i + 1]);
+						break;
+					case "--readers":
+						readers = Integer.parseInt(args[i + 1]);
+						break;
+					case "--workers":
+						workers = Integer.parseInt(args[i + 1]);
+						break;
+					case "--writers":
+						writers = Integer.parseInt(args[i + 1]);
+						break;
+					case "--queue":
+						capacity = Integer.parseInt(args[i + 1]);
+						break;
+					case "--weights":
+						int[] w = Arrays.stream(args[i + 1].split(",")).mapToInt(Integer::parseInt).toArray();
+						if (w.length != 3)
+							throw new IllegalArgumentException("Expected three weights: " + args[i + 1]);
+						rgbWeights = new RGBWeights(w[0], w[1], w[2]);
+						break;
+					default:
+						throw new IllegalArgumentException("Unknown option: " + args[i]);
+				}
+			}
+			if (args.length - i < 2)
+				throw new IllegalArgumentException("Expected an operation and inputs");
+			operation = OperationSpec.parse(args[i], rgbWeights);
+			pipeline = new BatchPipeline(new BatchRunner(operation, outDir, format, level), readers, workers, writers,
+					capacity < 0 ? 2 * workers : capacity);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		List<Path> files = expand(Arrays.asList(args).subList(i + 1, args.length));
+		Files.createDirectories(outDir);
+		List<Result> results = pipeline.run(files);
+		writeSummary(results, outDir.resolve(SUMMARY));
+
+		int failed = 0;
+		long read = 0, process = 0, write = 0;
+		for (Result r : results) {
+			if (r.error != null) {
+				failed++;
+				System.out.println(r.input + ": " + r.error);
+			} else {
+				System.out.printf(Locale.ROOT, "%s -> %s: read %.1f ms, %s %.1f ms, write %.1f ms%n",
+						r.input, r.output, r.readNanos / 1e6, operation.spec, r.processNanos / 1e6, r.writeNanos / 1e6);
+			}
+			read += r.readNanos;
+			process += r.processNanos;
+			write += r.writeNanos;
+		}
+		System.out.printf(Locale.ROOT, "%d images, %d failed, %.1f s: read %.1f s, process %.1f s, write %.1f s%n",
+				results.size(), failed, pipeline.wallNanos() / 1e9, read / 1e9, process / 1e9, write / 1e9);
+		pipeline.report(System.out);
+		if (failed > 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,106 @@
+package edu.cg.batch;
+
+import java.awt.Color;
+import java.util.concurrent.ForkJoinPool;
+
+import edu.cg.FunctioalForEachLoops;
+import edu.cg.ImageOperation;
+import edu.cg.ImageOperations;
+import edu.cg.Logger;
+import edu.cg.RGBWeights;
+import edu.cg.SeamCarving;
+
+// an operation of the batch mode, parsed from its spec:
+//   hue | greyscale | gradient
+//   nearest:WxH | bilinear:WxH | bicubic:WxH | lanczos:WxH | seam:WxH
+//   seams-vertical:W | seams-horizontal:H
+// the operations, seam carving included, run on the thread that applies them, the batch
+// parallelizes over the images.
+public final class OperationSpec {
+	// a pool of one thread runs the loops of the operations on the calling thread
+	private static final ForkJoinPool SEQUENTIAL = new ForkJoinPool(1);
+
+	public final String spec;
+	// the part of the output file names the operation adds, the spec without the colon
+	public final String suffix;
+	public final ImageOperation operation;
+
+	private OperationSpec(String spec, ImageOperation operation) {
+		this.spec = spec;
+		this.suffix = spec.replace(':', '-');
+		this.operation = operation;
+	}
+
+	public static OperationSpec parse(String spec, RGBWeights rgbWeights) {
+		ImageOperations operations = new ImageOperations(FunctioalForEachLoops.DEFAULT_GRAIN, SEQUENTIAL);
+		Logger logger = s -> { };
+		String name = spec;
+		String size = null;
+		int colon = spec.indexOf(':');
+		if (colon >= 0) {
+			name = spec.substring(0, colon);
+			size = spec.substring(colon + 1);
+		}
+
+		switch (name) {
+			case "hue":
+				return new OperationSpec(spec, operations.changeHue(rgbWeights));
+			case "greyscale":
+				return new OperationSpec(spec, operations.greyscale(rgbWeights));
+			case "gradient":
+				return new OperationSpec(spec, operations.gradientMagnitude(rgbWeights));
+			case "nearest": {
+				int[] wh = size(spec, size);
+				return new OperationSpec(spec, operations.nearestNeighbor(wh[0], wh[1]));
+			}
+			case "bilinear": {
+				int[] wh = size(spec, size);
+				return new OperationSpec(spec, operations.bilinear(wh[0], wh[1]));
+			}
+			case "bicubic": {
+				int[] wh = size(spec, size);
+				return new OperationSpec(spec, operations.bicubic(wh[0], wh[1]));
+			}
+			case "lanczos": {
+				int[] wh = size(spec, size);
+				return new OperationSpec(spec, operations.lanczos(wh[0], wh[1]));
+			}
+			case "seam": {
+				int[] wh = size(spec, size);
+				return new OperationSpec(spec, image ->
+						SeamCarving.resize(logger, image, wh[0], wh[1], rgbWeights, null, SEQUENTIAL));
+			}
+			case "seams-vertical": {
+				int width = positive(spec, size);
+				return new OperationSpec(spec, image -> SeamCarving.showSeamsVertical(logger, image,
+						width, rgbWeights, null, SEQUENTIAL, Color.RED.getRGB()));
+			}
+			case "seams-horizontal": {
+				int height = positive(spec, size);
+				return new OperationSpec(spec, image -> SeamCarving.showSeamsHorizontal(logger, image,
+						height, rgbWeights, null, SEQUENTIAL, Color.BLACK.getRGB()));
+			}
+			default:
+				throw new IllegalArgumentException("Unknown operation: " + spec);
+		}
+	}
+
+	private static int[] size(String spec, String size) {
+		int x = size == null ? -1 : size.indexOf('x');
+		if (x < 0)
+			throw new IllegalArgumentException("Expected a size WxH: " + spec);
+		return new int[] { positive(spec, size.substring(0, x)), positive(spec, size.substring(x + 1)) };
+	}
+
+	private static int positive(String spec, String value) {
+		int ans;
+		try {
+			ans = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Expected a positive number: " + spec);
+		}
+		if (ans <= 0)
+			throw new IllegalArgumentException("Expected a positive number: " + spec);
+		return ans;
+	}
+}
@@ -1,7 +1,7 @@
 package edu.cg.menu;
 
 /*
- * This class displays an image in a new window and allows to save it as a PNG file.
+ * This class displays an image in a new window and allows to save it as a PNG file or as a raw image.
  */
 
 import java.awt.BorderLayout;
@@ -10,6 +10,7 @@ import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.Locale;
 
 import javax.imageio.ImageIO;
 import javax.swing.JButton;
@@ -18,9 +19,20 @@ import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
+import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import edu.cg.ParallelPngWriter;
+import edu.cg.RawImage;
 
 @SuppressWarnings("serial")
 public class ImageWindow extends JFrame {
+	private static final FileNameExtensionFilter PNG_FILTER = new FileNameExtensionFilter("PNG image", "png");
+	private static final FileNameExtensionFilter PARALLEL_PNG_FILTER = new FileNameExtensionFilter(
+			"PNG image, compressed in parallel", "png");
+	private static final FileNameExtensionFilter RAW_FILTER = new FileNameExtensionFilter(
+			"Raw image, uncompressed (*." + RawImage.EXTENSION + ")", RawImage.EXTENSION);
+
 	private MenuWindow menuWindow;
 	private BufferedImage img;
 
@@ -42,9 +54,13 @@ public class ImageWindow extends JFrame {
 		JButton btnSaveAs = new JButton("Save as...");
 		btnSaveAs.addActionListener(e -> {
 			JFileChooser fileChooser = new JFileChooser();
+			fileChooser.addChoosableFileFilter(PNG_FILTER);
+			fileChooser.addChoosableFileFilter(PARALLEL_PNG_FILTER);
+			fileChooser.addChoosableFileFilter(RAW_FILTER);
+			fileChooser.setFileFilter(PNG_FILTER);
 			int ret = fileChooser.showSaveDialog(ImageWindow.this);
 			if (ret == JFileChooser.APPROVE_OPTION)
-				save(fileChooser.getSelectedFile());
+				save(fileChooser.getSelectedFile(), fileChooser.getFileFilter());
 		});
 		contentPane.add(btnSaveAs, BorderLayout.NORTH);
 		
@@ -69,9 +85,27 @@ public class ImageWindow extends JFrame {
 		}
 	}
 	
-	private void save(File file) {
+	// the raw format is chosen by its filter or by the extension of the file, large images are
+	// compressed faster in parallel
+	private void save(File file, FileFilter filter) {
+		boolean raw = filter == RAW_FILTER;
 		try {
-			ImageIO.write(img, "png", file);
+			String name = file.getName().toLowerCase(Locale.ROOT);
+			if (name.endsWith("." + RawImage.EXTENSION)) {
+				raw = true;
+			} else if (raw && name.indexOf('.') < 0) {
+				file = new File(file.getPath() + "." + RawImage.EXTENSION);
+			}
+
+			if (raw) {
+				RawImage.write(img, file);
+				menuWindow.log("File: " + file.getName() + " has been saved.");
+				return;
+			}
+			if (filter == PARALLEL_PNG_FILTER)
+				new ParallelPngWriter().write(img, file);
+			else
+				ImageIO.write(img, "png", file);
 			menuWindow.log("File: " + file.getName() + ".png has been saved.");
 		} catch (IOException e) {
 			menuWindow.log("Failed to save image: " + getTitle()); 
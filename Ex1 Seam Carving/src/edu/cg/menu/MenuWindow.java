@@ -4,6 +4,7 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.GridLayout;
 import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -12,7 +13,8 @@ import javax.swing.border.EmptyBorder;
 import edu.cg.RGBWeights;
 import edu.cg.ImageProcessor;
 import edu.cg.Logger;
-import edu.cg.SeamsCarver;
+import edu.cg.SeamCarving;
+import edu.cg.SeamPlanCache;
 import edu.cg.menu.components.ActionsController;
 import edu.cg.menu.components.ColorMixer;
 import edu.cg.menu.components.ImagePicker;
@@ -25,6 +27,8 @@ public class MenuWindow extends JFrame implements Logger {
 	//MARK: fields
 	private BufferedImage workingImage;
 	private String imageTitle;
+	// the seams of the last carves, shared by showing seams and resizing
+	private final SeamPlanCache seamPlans = new SeamPlanCache(8);
 	
 	//MARK: GUI fields
 	private ImagePicker imagePicker;
@@ -131,11 +135,26 @@ public class MenuWindow extends JFrame implements Logger {
 					outWidth,
 					outHeight).bilinear();
 			break;
+			
+		case BICUBIC:
+			img = new ImageProcessor(this,
+					duplicateImage(),
+					rgbWeights,
+					outWidth,
+					outHeight).bicubic();
+			break;
+			
+		case LANCZOS:
+			img = new ImageProcessor(this,
+					duplicateImage(),
+					rgbWeights,
+					outWidth,
+					outHeight).lanczos();
+			break;
 		
 		default: //seam carving
-			img = new SeamsCarver(this, duplicateImage(), outWidth, rgbWeights).resize();
-			img = new SeamsCarver(this, rotateClockwise(img), outHeight, rgbWeights).resize();
-			img = rotateCounterclockwise(img);
+			img = SeamCarving.resize(this, workingImage, outWidth, outHeight, rgbWeights, seamPlans,
+					ForkJoinPool.commonPool());
 			break;
 		}
 		
@@ -145,8 +164,8 @@ public class MenuWindow extends JFrame implements Logger {
 	public void showSeamsVertical() {
 		int outWidth = scaleSelector.width();
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
-		BufferedImage vertical = new SeamsCarver(this, duplicateImage(),
-				outWidth, rgbWeights).showSeams(Color.RED.getRGB());
+		BufferedImage vertical = SeamCarving.showSeamsVertical(this, workingImage,
+				outWidth, rgbWeights, seamPlans, ForkJoinPool.commonPool(), Color.RED.getRGB());
 		present(vertical, "Show seams vertical");
 	}
 
@@ -154,10 +173,8 @@ public class MenuWindow extends JFrame implements Logger {
 		int outHeight = scaleSelector.height();
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
 		
-		BufferedImage horizontal = new SeamsCarver(this, rotateClockwise(workingImage),
-				outHeight, rgbWeights).showSeams(Color.BLACK.getRGB());
-		
-		horizontal = rotateCounterclockwise(horizontal);
+		BufferedImage horizontal = SeamCarving.showSeamsHorizontal(this, workingImage,
+				outHeight, rgbWeights, seamPlans, ForkJoinPool.commonPool(), Color.BLACK.getRGB());
 		
 		present(horizontal, "Show seams horizontal");
 	}
@@ -169,34 +186,6 @@ public class MenuWindow extends JFrame implements Logger {
 		new ImageWindow(img, imageTitle + "; " + title, this).setVisible(true);
 	}
 	
-	private static BufferedImage rotateClockwise(BufferedImage img) {
-		int imgWidth =  img.getWidth();
-		int imgHeight = img.getHeight();
-		BufferedImage ans = new BufferedImage(imgHeight, imgWidth, img.getType());
-		for(int y = 0; y < imgWidth; ++y)
-			for(int x = 0; x < imgHeight; ++x) {
-				int imgX = y;
-				int imgY = imgHeight-1-x;
-				ans.setRGB(x, y, img.getRGB(imgX, imgY));
-			}
-		
-		return ans;
-	}
-	
-	private static BufferedImage rotateCounterclockwise(BufferedImage img) {
-		int imgWidth =  img.getWidth();
-		int imgHeight = img.getHeight();
-		BufferedImage ans = new BufferedImage(imgHeight, imgWidth, img.getType());
-		for(int y = 0; y < imgWidth; ++y)
-			for(int x = 0; x < imgHeight; ++x) {
-				int imgX = imgWidth-1-y;
-				int imgY = x;
-				ans.setRGB(x, y, img.getRGB(imgX, imgY));
-			}
-		
-		return ans;
-	}
-	
 	private static BufferedImage duplicateImage(BufferedImage img) {
 		BufferedImage dup = new BufferedImage(img.getWidth(), img.getHeight(), img.getType());
 		for(int y = 0; y < dup.getHeight(); ++y)
@@ -12,6 +12,7 @@ import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.border.EtchedBorder;
 
+import edu.cg.RawImage;
 import edu.cg.menu.MenuWindow;
 
 @SuppressWarnings("serial")
@@ -54,7 +55,7 @@ public class ImagePicker extends JPanel {
 	private void open(String filename) {
 		try {
 			File imgFile = new File(filename);
-			BufferedImage img = ImageIO.read(imgFile);
+			BufferedImage img = RawImage.isRaw(imgFile) ? RawImage.read(imgFile) : ImageIO.read(imgFile);
 			if(img == null)
 				throw new NullPointerException();
 			menuWindow.setWorkingImage(img, imgFile.getName());